@@ -0,0 +1,40 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+/**
+ *  class: BenchmarkRooms
+ * Helpers shared by the benchmarks: room size parameters ("width x length" 
+ * in inches) and random solutions.
+ */
+final class BenchmarkRooms {
+    private BenchmarkRooms() {
+    }
+
+    static int getWidth(String roomSize) {
+        return Integer.parseInt(roomSize.split("x")[0]);
+    }
+
+    static int getLength(String roomSize) {
+        return Integer.parseInt(roomSize.split("x")[1]);
+    }
+
+    // Solutions with uniformly random lights, like LightPos_API.init (and
+    // from the same kind of generator)
+    static Population randomPopulation(int size, int lights, int width,
+            int length, RandomSource random) {
+        Population solutions = new Population(size, lights);
+        for (int p = 0; p < size; p++) {
+            for (int k = 0; k < lights; k++) {
+                solutions.setLight(p, k, random.nextInt(width + 1),
+                        random.nextInt(length + 1),
+                        random.nextInt(FixtureCatalogue.DEFAULT.size()), 
+                        random.nextBoolean());
+            }
+        }
+        return solutions;
+    }
+}
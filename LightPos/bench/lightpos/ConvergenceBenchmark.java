@@ -0,0 +1,105 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  class: ConvergenceBenchmark
+ * Runs whole optimizations until a target fitness (or the evaluation 
+ * budget) is reached, once per strategy. Besides the time, JMH reports the
+ * fitness evaluations that were needed ("evaluations") and how many runs 
+ * reached the target ("reached"), both summed over the measured runs; this
+ * is how strategies are compared. Every invocation uses the next seed, so
+ * the iterations are independent runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConvergenceBenchmark {
+    @Param({"SELF_ADAPTIVE_ES", "CMA_ES"})
+    public String strategy;
+
+    // room width x length in inches
+    @Param({"96x96"})
+    public String roomSize;
+
+    // number of lights in each solution
+    @Param({"14"})
+    public int lights;
+
+    // number of parents (mu) / number of children (lambda)
+    @Param({"10/100"})
+    public String population;
+
+    // fitness at which a run stops
+    @Param({"3500"})
+    public double target;
+
+    // evaluations after which a run gives up
+    @Param({"200000"})
+    public long budget;
+
+    private LightPos_API api;
+    private long seed;
+
+    /**
+     *  class: Counters
+     * Per-invocation results reported next to the time.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long evaluations;
+        public long reached;
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        String[] muLambda = population.split("/");
+        api = new LightPos_API(Integer.parseInt(muLambda[0]), 
+                Integer.parseInt(muLambda[1]), lights, 
+                BenchmarkRooms.getWidth(roomSize), 
+                BenchmarkRooms.getLength(roomSize), 2, Integer.MAX_VALUE, 1);
+        api.setStrategy(LightPos_API.Strategy.valueOf(strategy));
+        api.setSeed(++seed);
+        api.setTargetFitness(target);
+        api.setEvaluationBudget(budget);
+    }
+
+    // Every invocation has its own optimizer, release it before the next
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        api.close();
+    }
+
+    @Benchmark
+    public double toTarget(Counters counters) {
+        api.getBestSolution();
+        counters.evaluations += api.getEvaluationCount();
+        if (api.getBestFitness() >= target) {
+            counters.reached++;
+        }
+        return api.getBestFitness();
+    }
+}
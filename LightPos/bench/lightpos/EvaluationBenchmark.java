@@ -0,0 +1,84 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  class: EvaluationBenchmark
+ * JMH benchmarks of the fitness evaluation of a single solution: the whole
+ * getFitness call and its two steps, getLightGrid and getFitnessHelper.
+ * Every invocation scores the next one of SOLUTIONS random solutions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+    // room width x length in inches, from one room up to a warehouse
+    @Param({"96x96", "480x480", "2400x2400"})
+    public String roomSize;
+
+    // number of lights in each solution
+    @Param({"14", "60"})
+    public int lights;
+
+    private static final int SOLUTIONS = 64;
+
+    private LightPos_API api;
+    private Population solutions;
+    private double[] lightGrid;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int width = BenchmarkRooms.getWidth(roomSize);
+        int length = BenchmarkRooms.getLength(roomSize);
+        api = new LightPos_API(1, 2, lights, width, length, 1, 1);
+        solutions = BenchmarkRooms.randomPopulation(SOLUTIONS, lights, width,
+                length, RandomSource.create(42));
+        lightGrid = new double[(width / 12) * (length / 12)];
+        api.getLightGrid(solutions, 0, lightGrid, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        api.close();
+    }
+
+    @Benchmark
+    public double getFitness() {
+        next = (next + 1) % SOLUTIONS;
+        return api.getFitness(solutions, next);
+    }
+
+    @Benchmark
+    public double[] getLightGrid() {
+        next = (next + 1) % SOLUTIONS;
+        api.getLightGrid(solutions, next, lightGrid, 0);
+        return lightGrid;
+    }
+
+    @Benchmark
+    public double getFitnessHelper() {
+        return api.getFitnessHelper(lightGrid, 0);
+    }
+}
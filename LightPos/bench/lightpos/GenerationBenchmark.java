@@ -0,0 +1,107 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *  class: GenerationBenchmark
+ * JMH benchmarks of the evolution strategy steps: mutate (one child of the
+ * default self-adaptive ES), generateOffspring, selectParents and a full
+ * generation (both of them).
+ * The population keeps evolving from one invocation to the next, like it
+ * does in getBestSolution.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerationBenchmark {
+    // room width x length in inches, from one room up to a warehouse
+    @Param({"96x96", "480x480", "2400x2400"})
+    public String roomSize;
+
+    // number of lights in each solution
+    @Param({"14", "60"})
+    public int lights;
+
+    // number of parents (mu) / number of children (lambda)
+    @Param({"10/100", "300/3000"})
+    public String population;
+
+    // threads used to score the children (0 = all processors)
+    @Param({"1"})
+    public int threads;
+
+    // whether hopeless children are given up early (see setPruning)
+    @Param({"false"})
+    public boolean pruning;
+
+    // where the parents and children are kept (see setPopulationStorage)
+    @Param({"HEAP"})
+    public String storage;
+
+    private LightPos_API api;
+    private int numChildren;
+    private int nextChild;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] muLambda = population.split("/");
+        numChildren = Integer.parseInt(muLambda[1]);
+        api = new LightPos_API(Integer.parseInt(muLambda[0]), numChildren,
+                lights, BenchmarkRooms.getWidth(roomSize), 
+                BenchmarkRooms.getLength(roomSize), 2, 1, threads,
+                FixtureCatalogue.DEFAULT, 
+                LightPos_API.Storage.valueOf(storage));
+        api.setPruning(pruning);
+        api.init();
+        api.generateOffspring();
+    }
+
+    // Release the evaluation threads and off-heap populations of the trial
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        api.close();
+    }
+
+    @Benchmark
+    public void mutate() {
+        nextChild = (nextChild + 1) % numChildren;
+        api.mutate(0, nextChild);
+    }
+
+    @Benchmark
+    public void generateOffspring() {
+        api.generateOffspring();
+    }
+
+    @Benchmark
+    public void selectParents() {
+        api.selectParents();
+    }
+
+    @Benchmark
+    public void generation() {
+        api.generateOffspring();
+        api.selectParents();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ *  class: JfrListener
+ * Emits the progress of an optimization as Java Flight Recorder events
+ * (lightpos.Generation, lightpos.Improvement and lightpos.Restart), e.g. with
+ *      java -XX:StartFlightRecording=filename=lightpos.jfr ...
+ * When no recording is running the events are not even created, so the
+ * listener can stay attached in production. Needs JDK 11 or later: it is
+ * built from src-jfr only when the build runs on JDK 11+ (see build.xml).
+ */
+public class JfrListener implements OptimizationListener {
+    private final GenerationEvent generationCheck = new GenerationEvent();
+
+    @Override
+    public void generationFinished(GenerationStats stats) {
+        if (!generationCheck.isEnabled()) {
+            return;
+        }
+        GenerationEvent event = new GenerationEvent();
+        event.generation = stats.generation;
+        event.run = stats.run;
+        event.evaluations = stats.evaluations;
+        event.prunedEvaluations = stats.prunedEvaluations;
+        event.skippedEvaluations = stats.skippedEvaluations;
+        event.estimateCorrelation = stats.estimateCorrelation;
+        event.latency = stats.latencyNanos;
+        event.evaluationsPerSecond = stats.getEvaluationsPerSecond();
+        event.bestFitness = stats.bestFitness;
+        event.meanFitness = stats.meanFitness;
+        event.stepSizeX = stats.mutationStepSize[0];
+        event.stepSizeY = stats.mutationStepSize[1];
+        event.stepSizeIntensity = stats.mutationStepSize[2];
+        event.stepSizePower = stats.mutationStepSize[3];
+        event.commit();
+    }
+
+    @Override
+    public void runImproved(int generation, double fitness) {
+        commitImprovement(generation, fitness, false);
+    }
+
+    @Override
+    public void bestImproved(int generation, double fitness) {
+        commitImprovement(generation, fitness, true);
+    }
+
+    private void commitImprovement(int generation, double fitness,
+            boolean overall) {
+        ImprovementEvent event = new ImprovementEvent();
+        if (event.isEnabled()) {
+            event.generation = generation;
+            event.fitness = fitness;
+            event.overall = overall;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void runRestarted(int generation, int run) {
+        RestartEvent event = new RestartEvent();
+        if (event.isEnabled()) {
+            event.generation = generation;
+            event.run = run;
+            event.commit();
+        }
+    }
+
+    @Name("lightpos.Generation")
+    @Label("Generation")
+    @Category("LightPos")
+    @Description("One generation of the evolution strategy")
+    static class GenerationEvent extends Event {
+        @Label("Generation")
+        int generation;
+        @Label("Run")
+        int run;
+        @Label("Evaluations")
+        int evaluations;
+        @Label("Pruned Evaluations")
+        int prunedEvaluations;
+        @Label("Skipped Evaluations")
+        int skippedEvaluations;
+        @Label("Estimate Correlation")
+        double estimateCorrelation;
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+        @Label("Evaluations per Second")
+        double evaluationsPerSecond;
+        @Label("Best Fitness")
+        double bestFitness;
+        @Label("Mean Fitness")
+        double meanFitness;
+        @Label("Step Size x")
+        double stepSizeX;
+        @Label("Step Size y")
+        double stepSizeY;
+        @Label("Step Size Intensity")
+        double stepSizeIntensity;
+        @Label("Step Size Power")
+        double stepSizePower;
+    }
+
+    @Name("lightpos.Improvement")
+    @Label("Improvement")
+    @Category("LightPos")
+    @Description("The best fitness of the current run or of all runs improved")
+    static class ImprovementEvent extends Event {
+        @Label("Generation")
+        int generation;
+        @Label("Fitness")
+        double fitness;
+        @Label("Overall")
+        boolean overall;
+    }
+
+    @Name("lightpos.Restart")
+    @Label("Restart")
+    @Category("LightPos")
+    @Description("A stagnated run ended and the mutation step sizes were reset")
+    static class RestartEvent extends Event {
+        @Label("Generation")
+        int generation;
+        @Label("Run")
+        int run;
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * BatchRunner
+ * Optimizes many rooms (or many parameter sets for one room) from a job
+ * file. The jobs run at the same time on a fixed number of worker threads,
+ * each with its own LightPos_API, and every result is written to the output
+ * file as soon as its job finishes.
+ *
+ * Job file: one job per line, "#" starts a comment. A job is a list of
+ * key=value pairs, keys that are left out use the LightPos.main values:
+ *      name=office-12 width=96 length=96 lights=14 parents=300
+ *      children=3000 step=2 generations=1000 seed=42
+ *      fixtures=lamps.txt room=l-shape.txt store=layouts.db warmstart=0.25
+ * where fixtures is a fixture catalogue file (see FixtureCatalogue), room
+ * a room geometry file (see RoomGeometry) and store a solution store that
+ * seeds warmstart of the initial parents and receives the result (see 
+ * LightPos_API.setWarmStart). Jobs that name the same store share it.
+ *
+ * Output file (CSV, in the order the jobs finish):
+ *      name,width,length,lights,parents,children,step,generations,seed,
+ *      fitness,millis,layout
+ * where layout lists the lights that are on as x:y:watts separated by ";".
+ * Fields that contain a comma, quote or line break are quoted (RFC 4180).
+ * A job that fails, or a job line that can not be parsed, gives a
+ * "# failed: Line n (name): ..." line instead; the other jobs still run.
+ * Sizes must be positive, with no more parents than children, and the room
+ * outline must fit the width and length, or the line is rejected.
+ *
+ * Usage: BatchRunner jobFile outputFile [workers]
+ *      workers defaults to the number of available processors.
+ */
+public class BatchRunner {
+    private static final String HEADER = "name,width,length,lights,parents,"
+            + "children,step,generations,seed,fitness,millis,layout";
+    // Solution stores opened by the jobs, by file
+    private static final Map<Path, SolutionStore> stores = new HashMap<>();
+
+    /**
+     * @param args the command line arguments: job file, output file and
+     * optionally the number of worker threads
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println(
+                    "Usage: BatchRunner jobFile outputFile [workers]");
+            System.exit(2);
+        }
+        int workers = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        List<Job> jobs = readJobs(args[0]);
+        try (PrintWriter output = new PrintWriter(Files.newBufferedWriter(
+                Paths.get(args[1]), StandardCharsets.UTF_8))) {
+            run(jobs, workers, output);
+        }
+    }
+
+    /**
+     * run
+     * @param jobs Jobs to optimize
+     * @param workers Number of jobs that run at the same time
+     * @param output Receives the header and one line per finished job
+     */
+    public static void run(List<Job> jobs, int workers, PrintWriter output) {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, workers));
+        CompletionService<String> results =
+                new ExecutorCompletionService<>(executor);
+        try {
+            for (Job job : jobs) {
+                results.submit(job::run);
+            }
+            output.println(HEADER);
+            output.flush();
+            for (int i = 0; i < jobs.size(); i++) {
+                String line;
+                try {
+                    line = results.take().get();
+                } catch (ExecutionException e) {
+                    // Keep going, one bad job should not lose the others
+                    // (Job.run names the job in the message)
+                    String message = e.getCause().getMessage();
+                    line = "# failed: " + (message != null ? message 
+                            : e.getCause().toString());
+                }
+                output.println(line);
+                output.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Parse every job of a job file. A line that can not be parsed becomes
+    // a job that fails with the parse error, so it is reported in the output
+    // without stopping the other jobs.
+    public static List<Job> readJobs(String jobFile) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(
+                Paths.get(jobFile), StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                if (!line.trim().isEmpty()) {
+                    try {
+                        jobs.add(Job.parse(line, lineNumber));
+                    } catch (IllegalArgumentException e) {
+                        jobs.add(Job.invalid(e));
+                    }
+                }
+            }
+        }
+        return jobs;
+    }
+
+    // A CSV field, quoted if it contains a separator, quote or line break
+    static String toCsvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // The store of a file, opened once for all jobs that use it
+    static synchronized SolutionStore openStore(Path file) 
+            throws IOException {
+        SolutionStore store = stores.get(file.toAbsolutePath());
+        if (store == null) {
+            store = SolutionStore.open(file);
+            stores.put(file.toAbsolutePath(), store);
+        }
+        return store;
+    }
+
+    /**
+     *  class: Job
+     * One room/parameter set of a job file.
+     */
+    public static class Job {
+        String name;
+        int lineNumber;
+        int width = 96;
+        int length = 96;
+        int lights = 14;
+        int parents = 300;
+        int children = 3000;
+        double step = 2;
+        int generations = 1000;
+        long seed;
+        boolean seeded = false;
+        FixtureCatalogue catalogue = FixtureCatalogue.DEFAULT;
+        RoomGeometry geometry;
+        SolutionStore store;
+        double warmStart = 0.25;
+        // Why the job line could not be parsed (null for a valid job)
+        IllegalArgumentException error;
+
+        // A job that only reports the parse error of its line
+        static Job invalid(IllegalArgumentException error) {
+            Job job = new Job();
+            job.error = error;
+            return job;
+        }
+
+        static Job parse(String line, int lineNumber) {
+            Map<String, String> values = new HashMap<>();
+            for (String token : line.trim().split("\\s+")) {
+                int equals = token.indexOf('=');
+                if (equals <= 0) {
+                    throw new IllegalArgumentException("Line " + lineNumber
+                            + ": expected key=value but found " + token);
+                }
+                values.put(token.substring(0, equals),
+                        token.substring(equals + 1));
+            }
+            Job job = new Job();
+            job.lineNumber = lineNumber;
+            try {
+                job.name = values.containsKey("name") ? values.remove("name")
+                        : "job" + lineNumber;
+                if (values.containsKey("width")) {
+                    job.width = Integer.parseInt(values.remove("width"));
+                }
+                if (values.containsKey("length")) {
+                    job.length = Integer.parseInt(values.remove("length"));
+                }
+                if (values.containsKey("lights")) {
+                    job.lights = Integer.parseInt(values.remove("lights"));
+                }
+                if (values.containsKey("parents")) {
+                    job.parents = Integer.parseInt(values.remove("parents"));
+                }
+                if (values.containsKey("children")) {
+                    job.children = Integer.parseInt(values.remove("children"));
+                }
+                if (values.containsKey("step")) {
+                    job.step = Double.parseDouble(values.remove("step"));
+                }
+                if (values.containsKey("generations")) {
+                    job.generations = Integer.parseInt(
+                            values.remove("generations"));
+                }
+                if (values.containsKey("seed")) {
+                    job.seed = Long.parseLong(values.remove("seed"));
+                    job.seeded = true;
+                }
+                if (values.containsKey("fixtures")) {
+                    String file = values.remove("fixtures");
+                    try {
+                        job.catalogue = FixtureCatalogue.load(
+                                Paths.get(file));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException(file + ": "
+                                + e.getMessage(), e);
+                    }
+                }
+                if (values.containsKey("room")) {
+                    String file = values.remove("room");
+                    try {
+                        job.geometry = RoomGeometry.load(Paths.get(file));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException(file + ": "
+                                + e.getMessage(), e);
+                    }
+                }
+                if (values.containsKey("store")) {
+                    job.store = openStore(Paths.get(values.remove("store")));
+                }
+                if (values.containsKey("warmstart")) {
+                    job.warmStart = Double.parseDouble(
+                            values.remove("warmstart"));
+                }
+            } catch (IllegalArgumentException e) {
+                // Bad numbers, or errors in a fixture or room file (named
+                // in the message)
+                throw new IllegalArgumentException("Line " + lineNumber
+                        + ": " + e.getMessage(), e);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Line " + lineNumber
+                        + ": cannot read " + e.getMessage(), e);
+            }
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Line " + lineNumber
+                        + ": unknown keys " + values.keySet());
+            }
+            job.validate();
+            return job;
+        }
+
+        // Reject parameters the optimizer can not run with, so the job fails
+        // with a readable message before it starts
+        private void validate() {
+            if (width <= 0 || length <= 0 || lights <= 0 || parents <= 0
+                    || children <= 0) {
+                throw new IllegalArgumentException("Line " + lineNumber
+                        + " (" + name + "): width, length, lights, parents "
+                        + "and children must be positive");
+            }
+            if (parents > children) {
+                throw new IllegalArgumentException("Line " + lineNumber
+                        + " (" + name + "): " + parents + " parents but only "
+                        + children + " children");
+            }
+            if (geometry != null) {
+                try {
+                    geometry.checkBounds(width, length);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + lineNumber
+                            + " (" + name + "): " + e.getMessage(), e);
+                }
+            }
+        }
+
+        // Optimize the room and return its output line; a failure is 
+        // rethrown with the line and name of the job
+        String run() {
+            if (error != null) {
+                throw error;
+            }
+            long start = System.nanoTime();
+            try (LightPos_API api = new LightPos_API(parents, children, 
+                    lights, width, length, step, generations, 1, catalogue)) {
+                return run(api, start);
+            } catch (RuntimeException e) {
+                throw new IllegalStateException("Line " + lineNumber + " ("
+                        + name + "): " + e, e);
+            }
+        }
+
+        // Optimize the room with api and return its output line
+        private String run(LightPos_API api, long start) {
+            if (seeded) {
+                api.setSeed(seed);
+            }
+            api.setRoomGeometry(geometry);
+            if (store != null) {
+                api.setWarmStart(store, warmStart);
+            }
+            light[] bestSolution = api.getBestSolution();
+            long millis = (System.nanoTime() - start) / 1000000;
+
+            StringBuilder layout = new StringBuilder();
+            for (light l : bestSolution) {
+                if (l.isOn()) {
+                    if (layout.length() > 0) {
+                        layout.append(';');
+                    }
+                    layout.append(l.getPos_x()).append(':')
+                            .append(l.getPos_y()).append(':')
+                            .append(l.getWatts());
+                }
+            }
+            return toCsvField(name) + "," + width + "," + length + ","
+                    + lights + "," + parents + "," + children + "," + step + ","
+                    + generations + "," + (seeded ? seed : "") + ","
+                    + api.getBestFitness() + "," + millis + "," + layout;
+        }
+    }
+}
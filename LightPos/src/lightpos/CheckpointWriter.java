@@ -0,0 +1,104 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *  class: CheckpointWriter
+ * Writes checkpoints (see LightPos_API.saveCheckpoint) on a background
+ * thread so the generation loop only pays for taking the snapshot. A
+ * checkpoint is written to a temporary file next to the target and then
+ * moved over it, so the file on disk is always a complete checkpoint. If
+ * snapshots arrive faster than they can be written, only the newest one is
+ * written.
+ */
+class CheckpointWriter {
+    private final Path file;
+    private final int interval; // generations between checkpoints
+    private final ExecutorService executor;
+    private final AtomicReference<byte[]> pending = new AtomicReference<>();
+    private volatile IOException error;
+
+    public CheckpointWriter(Path file, int interval) {
+        this.file = file;
+        this.interval = Math.max(1, interval);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "LightPos checkpoint writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    // Queue a snapshot, replacing one that has not been written yet
+    public void submit(byte[] snapshot) {
+        if (pending.getAndSet(snapshot) == null) {
+            executor.execute(this::writePending);
+        }
+    }
+
+    // Wait until every submitted snapshot is on disk
+    public void await() {
+        try {
+            executor.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // The last error of a background write, or null if all of them worked
+    public IOException getError() {
+        return error;
+    }
+
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void writePending() {
+        byte[] snapshot = pending.getAndSet(null);
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            write(file, snapshot);
+            error = null;
+        } catch (IOException e) {
+            // Keep optimizing, the previous checkpoint is still intact
+            error = e;
+        }
+    }
+
+    // Atomically replace file with the given bytes
+    static void write(Path file, byte[] snapshot) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            out.write(snapshot);
+            out.getFD().sync();
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
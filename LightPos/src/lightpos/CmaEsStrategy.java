@@ -0,0 +1,465 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ *  class: CmaEsStrategy
+ * Covariance matrix adaptation evolution strategy (CMA-ES, see Hansen, "The
+ * CMA Evolution Strategy: A Tutorial") over the continuous genes, the x and
+ * y position of every light (N = 2 * number of lights dimensions). Every
+ * child is sampled from a normal distribution around the weighted mean of
+ * the best parents, whose shape (covariance matrix) and size (sigma) adapt
+ * to the steps that were selected. Positions outside of the room are
+ * reflected back into it, and then rounded to whole inches.
+ *
+ * The discrete genes (intensity option and on/off of every light) are not
+ * part of the normal distribution. Each light has its own probabilities
+ * for every intensity option and for being on, which move towards the
+ * (weighted) choices of the selected parents every generation and are kept
+ * away from 0 and 1 so no option is lost for good.
+ *
+ * The number of parents (mu) and children (lambda) of LightPos_API are used
+ * as the CMA-ES mu and lambda, the initial step size as the initial sigma.
+ */
+class CmaEsStrategy implements SearchStrategy {
+    private final int nNumber; // number of lights
+    private final int dimension; // x and y of every light
+    private final int roomWidth;
+    private final int roomLength;
+    private final double initialSigma;
+
+    // Strategy parameters (default settings of the tutorial)
+    private final double[] weights; // log-linear, of the best mu parents
+    private final double muEff;
+    private final double cSigma; // cumulation for the step size
+    private final double dSigma; // damping of the step size
+    private final double cC; // cumulation for the rank-one update
+    private final double c1; // learning rate of the rank-one update
+    private final double cMu; // learning rate of the rank-mu update
+    private final double chiN; // expected length of a N(0, I) vector
+
+    // Distribution of the positions: mean + sigma * B * D * N(0, I) where
+    // B * D^2 * B' is the covariance matrix C (all row-major N x N)
+    private final double[] mean;
+    private double sigma;
+    private final double[] covariance;
+    private final double[] eigenVectors; // B, the columns are the vectors
+    private final double[] eigenValues; // D, square roots of the eigenvalues
+    private final double[] pathC; // evolution path of C
+    private final double[] pathSigma; // evolution path of sigma
+    private int runGeneration; // generations since startRun
+    private int eigenGeneration; // generation B and D were computed
+
+    // Probability of every intensity option (option o of light k at
+    // k * options + o) and of being on, for every light
+    private final int options;
+    private final double[] optionProbability;
+    private final double[] onProbability;
+    private static final double DISCRETE_LEARNING_RATE = 0.2;
+    private static final double DISCRETE_MIN_PROBABILITY = 0.02;
+
+    // Scratch space
+    private final double[] z;
+    private final double[] step;
+    private final double[] steps; // step of every selected parent
+
+    public CmaEsStrategy(int nNumber, int numParents, int roomWidth, 
+            int roomLength, int fixtureCount, double initialSigma) {
+        this.nNumber = nNumber;
+        this.dimension = 2 * nNumber;
+        this.roomWidth = roomWidth;
+        this.roomLength = roomLength;
+        this.initialSigma = initialSigma;
+        int n = dimension;
+        chiN = Math.sqrt(n) * (1 - 1.0 / (4 * n) + 1.0 / (21.0 * n * n));
+        mean = new double[n];
+        covariance = new double[n * n];
+        eigenVectors = new double[n * n];
+        eigenValues = new double[n];
+        pathC = new double[n];
+        pathSigma = new double[n];
+        options = fixtureCount;
+        optionProbability = new double[nNumber * options];
+        onProbability = new double[nNumber];
+        z = new double[n];
+        step = new double[n];
+
+        int mu = numParents;
+        weights = new double[mu];
+        double sum = 0;
+        for (int i = 0; i < mu; i++) {
+            weights[i] = Math.log(mu + 0.5) - Math.log(i + 1);
+            sum += weights[i];
+        }
+        double sumSquares = 0;
+        for (int i = 0; i < mu; i++) {
+            weights[i] /= sum;
+            sumSquares += weights[i] * weights[i];
+        }
+        muEff = 1 / sumSquares;
+        cSigma = (muEff + 2) / (n + muEff + 5);
+        dSigma = 1 + 2 * Math.max(0, Math.sqrt((muEff - 1) / (n + 1)) - 1)
+                + cSigma;
+        cC = (4 + muEff / n) / (n + 4 + 2 * muEff / n);
+        c1 = 2 / ((n + 1.3) * (n + 1.3) + muEff);
+        cMu = Math.min(1 - c1,
+                2 * (muEff - 2 + 1 / muEff) / ((n + 2) * (n + 2) + muEff));
+        steps = new double[mu * n];
+    }
+
+    /**
+     * startRun
+     * Description: Centers the distribution on the fittest parent with
+     * C = I and the initial sigma. The discrete probabilities start halfway
+     * between the genes of that parent and a uniform choice.
+     */
+    @Override
+    public void startRun(Population parents) {
+        int best = 0;
+        for (int i = 1; i < parents.size(); i++) {
+            if (Double.compare(parents.fitness[i], parents.fitness[best]) > 0) {
+                best = i;
+            }
+        }
+        int n = dimension;
+        for (int k = 0; k < nNumber; k++) {
+            mean[2 * k] = parents.getPos_x(best, k);
+            mean[2 * k + 1] = parents.getPos_y(best, k);
+            for (int o = 0; o < options; o++) {
+                optionProbability[k * options + o] = 0.5 / options
+                        + (parents.getIntensityOp(best, k) == o ? 0.5 : 0);
+            }
+            onProbability[k] = parents.isOn(best, k) ? 0.75 : 0.25;
+        }
+        sigma = initialSigma;
+        for (int i = 0; i < n * n; i++) {
+            covariance[i] = 0;
+            eigenVectors[i] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            covariance[i * n + i] = 1;
+            eigenVectors[i * n + i] = 1;
+            eigenValues[i] = 1;
+            pathC[i] = 0;
+            pathSigma[i] = 0;
+        }
+        runGeneration = 0;
+        eigenGeneration = 0;
+    }
+
+    /**
+     * generateOffspring
+     * Description: Samples every child from the current distribution. All
+     * children are most similar to the first (best) parent, which is closest
+     * to the mean.
+     */
+    @Override
+    public void generateOffspring(Population parents, Population children,
+            int[] childParent, RandomSource random) {
+        int n = dimension;
+        double value;
+        int op;
+        double u;
+        for (int c = 0; c < children.size(); c++) {
+            childParent[c] = 0;
+            for (int i = 0; i < n; i++) {
+                z[i] = eigenValues[i] * random.nextGaussian();
+            }
+            for (int k = 0; k < nNumber; k++) {
+                // mean + sigma * B * D * z for the x and y of light k
+                value = 0;
+                for (int j = 0; j < n; j++) {
+                    value += eigenVectors[2 * k * n + j] * z[j];
+                }
+                int x = reflect(mean[2 * k] + sigma * value, roomWidth);
+                value = 0;
+                for (int j = 0; j < n; j++) {
+                    value += eigenVectors[(2 * k + 1) * n + j] * z[j];
+                }
+                int y = reflect(mean[2 * k + 1] + sigma * value, roomLength);
+
+                u = random.nextDouble();
+                op = 0;
+                while (op < options - 1
+                        && u >= optionProbability[k * options + op]) {
+                    u -= optionProbability[k * options + op];
+                    op++;
+                }
+                children.setLight(c, k, x, y, op,
+                        random.nextDouble() < onProbability[k]);
+            }
+        }
+    }
+
+    // Reflect a position at the walls until it is within [0, size], then
+    // round it to whole inches
+    private static int reflect(double position, int size) {
+        return (int) Math.round(SearchStrategy.reflect(position, 0, size));
+    }
+
+    /**
+     * parentsSelected
+     * Description: Moves the mean to the weighted mean of the selected
+     * parents and updates the evolution paths, C and sigma from the steps
+     * (parent - old mean) / sigma. The steps are taken from the rounded and
+     * reflected positions the parents really have. B and D are only
+     * recomputed every few generations, as the tutorial suggests, because
+     * the decomposition costs O(N^3).
+     */
+    @Override
+    public void parentsSelected(Population parents) {
+        int n = dimension;
+        int mu = weights.length;
+        runGeneration++;
+
+        // Weighted mean step of the selected parents
+        for (int i = 0; i < n; i++) {
+            step[i] = 0;
+        }
+        for (int p = 0; p < mu; p++) {
+            for (int k = 0; k < nNumber; k++) {
+                steps[p * n + 2 * k] =
+                        (parents.getPos_x(p, k) - mean[2 * k]) / sigma;
+                steps[p * n + 2 * k + 1] =
+                        (parents.getPos_y(p, k) - mean[2 * k + 1]) / sigma;
+            }
+            for (int i = 0; i < n; i++) {
+                step[i] += weights[p] * steps[p * n + i];
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            mean[i] += sigma * step[i];
+        }
+
+        // Sigma path: C^(-1/2) * step = B * D^-1 * B' * step
+        for (int j = 0; j < n; j++) {
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += eigenVectors[i * n + j] * step[i];
+            }
+            z[j] = sum / eigenValues[j];
+        }
+        double pathFactor = Math.sqrt(cSigma * (2 - cSigma) * muEff);
+        double pathLength = 0;
+        for (int i = 0; i < n; i++) {
+            double sum = 0;
+            for (int j = 0; j < n; j++) {
+                sum += eigenVectors[i * n + j] * z[j];
+            }
+            pathSigma[i] = (1 - cSigma) * pathSigma[i] + pathFactor * sum;
+            pathLength += pathSigma[i] * pathSigma[i];
+        }
+        pathLength = Math.sqrt(pathLength);
+
+        // C path, stalled while sigma grows quickly
+        boolean stalled = pathLength / Math.sqrt(1 - Math.pow(1 - cSigma,
+                2 * runGeneration)) / chiN >= 1.4 + 2.0 / (n + 1);
+        pathFactor = Math.sqrt(cC * (2 - cC) * muEff);
+        for (int i = 0; i < n; i++) {
+            pathC[i] = (1 - cC) * pathC[i]
+                    + (stalled ? 0 : pathFactor * step[i]);
+        }
+
+        // Rank-one and rank-mu update of C (the upper triangle, mirrored)
+        double keep = 1 - c1 - cMu + (stalled ? c1 * cC * (2 - cC) : 0);
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                double rankMu = 0;
+                for (int p = 0; p < mu; p++) {
+                    rankMu += weights[p] * steps[p * n + i] * steps[p * n + j];
+                }
+                double value = keep * covariance[i * n + j]
+                        + c1 * pathC[i] * pathC[j] + cMu * rankMu;
+                covariance[i * n + j] = value;
+                covariance[j * n + i] = value;
+            }
+        }
+
+        // Step size, never larger than the room
+        sigma *= Math.exp(cSigma / dSigma * (pathLength / chiN - 1));
+        sigma = Math.min(sigma, Math.max(roomWidth, roomLength));
+
+        if (runGeneration - eigenGeneration > 1 / (c1 + cMu) / n / 10) {
+            updateEigenSystem();
+            eigenGeneration = runGeneration;
+        }
+
+        // Discrete genes move towards the weighted choices of the parents
+        for (int k = 0; k < nNumber; k++) {
+            double on = 0;
+            for (int p = 0; p < mu; p++) {
+                if (parents.isOn(p, k)) {
+                    on += weights[p];
+                }
+            }
+            onProbability[k] = Math.max(DISCRETE_MIN_PROBABILITY, Math.min(
+                    1 - DISCRETE_MIN_PROBABILITY,
+                    (1 - DISCRETE_LEARNING_RATE) * onProbability[k]
+                    + DISCRETE_LEARNING_RATE * on));
+            for (int o = 0; o < options; o++) {
+                optionProbability[k * options + o] *=
+                        1 - DISCRETE_LEARNING_RATE;
+            }
+            for (int p = 0; p < mu; p++) {
+                optionProbability[k * options
+                        + parents.getIntensityOp(p, k)] +=
+                        DISCRETE_LEARNING_RATE * weights[p];
+            }
+            double sum = 0;
+            for (int o = 0; o < options; o++) {
+                optionProbability[k * options + o] = Math.max(
+                        DISCRETE_MIN_PROBABILITY,
+                        optionProbability[k * options + o]);
+                sum += optionProbability[k * options + o];
+            }
+            for (int o = 0; o < options; o++) {
+                optionProbability[k * options + o] /= sum;
+            }
+        }
+    }
+
+    // B and D from C (cyclic Jacobi rotations on a copy of C)
+    private void updateEigenSystem() {
+        int n = dimension;
+        double[] a = covariance.clone();
+        double[] v = eigenVectors;
+        for (int i = 0; i < n * n; i++) {
+            v[i] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            v[i * n + i] = 1;
+        }
+        for (int sweep = 0; sweep < 50; sweep++) {
+            double offDiagonal = 0;
+            double diagonal = 0;
+            for (int p = 0; p < n; p++) {
+                diagonal += a[p * n + p] * a[p * n + p];
+                for (int q = p + 1; q < n; q++) {
+                    offDiagonal += a[p * n + q] * a[p * n + q];
+                }
+            }
+            if (offDiagonal <= 1e-30 * diagonal) {
+                break;
+            }
+            for (int p = 0; p < n - 1; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    double apq = a[p * n + q];
+                    if (apq == 0) {
+                        continue;
+                    }
+                    double theta = (a[q * n + q] - a[p * n + p]) / (2 * apq);
+                    double t = Math.signum(theta)
+                            / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+                    if (theta == 0) {
+                        t = 1;
+                    }
+                    double c = 1 / Math.sqrt(t * t + 1);
+                    double s = t * c;
+                    for (int k = 0; k < n; k++) {
+                        double akp = a[k * n + p];
+                        double akq = a[k * n + q];
+                        a[k * n + p] = c * akp - s * akq;
+                        a[k * n + q] = s * akp + c * akq;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double apk = a[p * n + k];
+                        double aqk = a[q * n + k];
+                        a[p * n + k] = c * apk - s * aqk;
+                        a[q * n + k] = s * apk + c * aqk;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double vkp = v[k * n + p];
+                        double vkq = v[k * n + q];
+                        v[k * n + p] = c * vkp - s * vkq;
+                        v[k * n + q] = s * vkp + c * vkq;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            // Rounding can make tiny eigenvalues negative
+            eigenValues[i] = Math.sqrt(Math.max(a[i * n + i], 1e-20));
+        }
+    }
+
+    /**
+     * getStepSize
+     * @return For x and y: sigma times the mean standard deviation of the
+     * x (y) coordinates in C, in inches. For the intensity option and on/off:
+     * the mean probability of not choosing the most likely value.
+     */
+    @Override
+    public double getStepSize(int parameter) {
+        double sum = 0;
+        if (parameter < 2) {
+            for (int k = 0; k < nNumber; k++) {
+                int i = 2 * k + parameter;
+                sum += Math.sqrt(covariance[i * dimension + i]);
+            }
+            return sigma * sum / nNumber;
+        }
+        for (int k = 0; k < nNumber; k++) {
+            if (parameter == 2) {
+                double max = 0;
+                for (int o = 0; o < options; o++) {
+                    max = Math.max(max, optionProbability[k * options + o]);
+                }
+                sum += 1 - max;
+            } else {
+                sum += Math.min(onProbability[k], 1 - onProbability[k]);
+            }
+        }
+        return sum / nNumber;
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        out.writeDouble(sigma);
+        out.writeInt(runGeneration);
+        out.writeInt(eigenGeneration);
+        writeDoubles(out, mean);
+        writeDoubles(out, covariance);
+        writeDoubles(out, eigenVectors);
+        writeDoubles(out, eigenValues);
+        writeDoubles(out, pathC);
+        writeDoubles(out, pathSigma);
+        writeDoubles(out, optionProbability);
+        writeDoubles(out, onProbability);
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        sigma = in.readDouble();
+        runGeneration = in.readInt();
+        eigenGeneration = in.readInt();
+        readDoubles(in, mean);
+        readDoubles(in, covariance);
+        readDoubles(in, eigenVectors);
+        readDoubles(in, eigenValues);
+        readDoubles(in, pathC);
+        readDoubles(in, pathSigma);
+        readDoubles(in, optionProbability);
+        readDoubles(in, onProbability);
+    }
+
+    private static void writeDoubles(DataOutput out, double[] values)
+            throws IOException {
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static void readDoubles(DataInput in, double[] values)
+            throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.io.PrintStream;
+
+/**
+ *  class: ConsoleListener
+ * Prints the progress of an optimization: a dot per generation and a line
+ * for every improvement and restart (the output LightPos has always shown).
+ * With a report interval it also prints a statistics line every that many
+ * generations. The dots are only flushed with the next line, so a
+ * generation does not wait for the console.
+ */
+public class ConsoleListener implements OptimizationListener {
+    private final PrintStream out;
+    private final int reportInterval;
+    private final StringBuilder dots = new StringBuilder();
+
+    public ConsoleListener() {
+        this(System.out, 0);
+    }
+
+    /**
+     * @param out Stream to print to
+     * @param reportInterval Generations between statistics lines, 0 for none
+     */
+    public ConsoleListener(PrintStream out, int reportInterval) {
+        this.out = out;
+        this.reportInterval = reportInterval;
+    }
+
+    @Override
+    public void generationFinished(GenerationStats stats) {
+        dots.append('.');
+        if (dots.length() >= 100) {
+            flushDots();
+        }
+        if (reportInterval > 0 && stats.generation % reportInterval == 0) {
+            println(String.format("\ngeneration %d (run %d): best %.4f, "
+                    + "mean %.4f, %d evaluations in %.3f ms (%.0f/s), "
+                    + "step sizes %.3f %.3f %.3f %.3f",
+                    stats.generation, stats.run, stats.bestFitness,
+                    stats.meanFitness, stats.evaluations,
+                    stats.latencyNanos / 1e6,
+                    stats.getEvaluationsPerSecond(),
+                    stats.mutationStepSize[0], stats.mutationStepSize[1],
+                    stats.mutationStepSize[2], stats.mutationStepSize[3]));
+        }
+    }
+
+    @Override
+    public void runImproved(int generation, double fitness) {
+        println("\nCurrent run best fitness: " + fitness);
+    }
+
+    @Override
+    public void bestImproved(int generation, double fitness) {
+        println("\nCurrent best overall fitness: " + fitness);
+    }
+
+    @Override
+    public void runRestarted(int generation, int run) {
+        println("\nResetting mutation step size...");
+    }
+
+    private void println(String line) {
+        flushDots();
+        out.println(line);
+    }
+
+    private void flushDots() {
+        out.print(dots);
+        out.flush();
+        dots.setLength(0);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  class: FitnessCache
+ * Bounded map from a solution to its fitness. The least recently used
+ * solution is dropped once the cache is full. Not thread safe, it is only
+ * used from the thread that runs the generation loop.
+ */
+class FitnessCache {
+    private final int capacity;
+    private final LinkedHashMap<Key, Double> entries;
+    private long hits;
+    private long misses;
+
+    public FitnessCache(int capacity) {
+        this.capacity = capacity;
+        // access order: get() moves an entry to the back of the eviction queue
+        this.entries = new LinkedHashMap<Key, Double>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+                return size() > FitnessCache.this.capacity;
+            }
+        };
+    }
+
+    // Canonical key of one individual: x, y and intensity option/on-off of
+    // every light in order
+    public static Key keyOf(Population solutions, int individual) {
+        int[] genome = new int[solutions.nNumber * 3];
+        for (int k = 0; k < solutions.nNumber; k++) {
+            genome[3 * k] = solutions.getPos_x(individual, k);
+            genome[3 * k + 1] = solutions.getPos_y(individual, k);
+            genome[3 * k + 2] = (solutions.getIntensityOp(individual, k) << 1)
+                    | (solutions.isOn(individual, k) ? 1 : 0);
+        }
+        return new Key(genome);
+    }
+
+    // Returns the cached fitness, or null (and counts a miss) if not cached
+    public Double get(Key key) {
+        Double fitness = entries.get(key);
+        if (fitness == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return fitness;
+    }
+
+    // Count a hit for a solution that was resolved without the map (a copy
+    // of a solution that is being scored right now)
+    public void countHit() {
+        hits++;
+    }
+
+    public void put(Key key, double fitness) {
+        entries.put(key, fitness);
+    }
+
+    // Forget every fitness (after the fitness function changed)
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     *  class: Key
+     * Packed genome of a solution with its hash computed once.
+     */
+    static final class Key {
+        private final int[] genome;
+        private final int hash;
+
+        Key(int[] genome) {
+            this.genome = genome;
+            this.hash = Arrays.hashCode(genome);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).hash == hash
+                    && Arrays.equals(((Key) other).genome, genome);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+/**
+ *  class: FitnessSurrogate
+ * Cheap estimate of the fitness of a solution from the real fitness of
+ * solutions scored recently: the inverse-distance weighted mean of its k
+ * nearest neighbours in an archive (see LightPos_API.setSurrogate). The
+ * archive keeps the last capacity solutions added, the oldest one is
+ * overwritten first.
+ *
+ * Solutions are compared light by light (light k of one with light k of
+ * the other, the way children inherit their lights), by the squared
+ * distance in inches plus STEP_DISTANCE inches for every fixture step and
+ * for a light that is switched differently:
+ *      sum over k of dx^2 + dy^2 + (STEP_DISTANCE * dOp)^2
+ *          + (STEP_DISTANCE if only one of them is on)^2
+ * A neighbour search stops summing a candidate once it is farther than the
+ * k-th nearest so far.
+ *
+ * add is only called from the thread that runs the generation loop, and
+ * predict may be called from several threads between two add calls.
+ */
+class FitnessSurrogate {
+    // Moving a light by one sensor pitch counts as much as one fixture step
+    // or switching it
+    private static final long STEP_DISTANCE = 12;
+
+    private final Population archive;
+    private final int neighbours;
+    private int size; // solutions in the archive
+    private int next; // slot the next solution is written to
+    // Neighbour search scratch space, one per predicting thread
+    private final ThreadLocal<long[]> nearestDistance;
+    private final ThreadLocal<double[]> nearestFitness;
+
+    public FitnessSurrogate(int capacity, int neighbours, int nNumber) {
+        this.archive = new Population(capacity, nNumber);
+        this.neighbours = neighbours;
+        this.nearestDistance = ThreadLocal.withInitial(
+                () -> new long[neighbours]);
+        this.nearestFitness = ThreadLocal.withInitial(
+                () -> new double[neighbours]);
+    }
+
+    // Whether there are enough solutions in the archive to predict from
+    public boolean isReady() {
+        return size >= neighbours;
+    }
+
+    // Number of solutions in the archive
+    public int size() {
+        return size;
+    }
+
+    // Remember a solution with its real fitness (the fitness stored with it)
+    public void add(Population solutions, int individual) {
+        archive.copyIndividual(solutions, individual, next);
+        next = (next + 1) % archive.size();
+        size = Math.min(size + 1, archive.size());
+    }
+
+    /**
+     * predict
+     * @param solutions Population of the solution
+     * @param individual Index of the solution
+     * @return Returns the estimated fitness: the mean fitness of the
+     * nearest archived solutions, weighted by 1 / (1 + distance), or the
+     * fitness of an archived solution with the same lights.
+     */
+    public double predict(Population solutions, int individual) {
+        long[] distance = nearestDistance.get();
+        double[] fitness = nearestFitness.get();
+        int found = 0;
+        for (int a = 0; a < size; a++) {
+            long limit = found < neighbours ? Long.MAX_VALUE
+                    : distance[found - 1];
+            long d = getDistance(solutions, individual, a, limit);
+            if (d >= limit) {
+                continue;
+            }
+            // Insert into the nearest ones (nearest first)
+            int i = found < neighbours ? found++ : found - 1;
+            while (i > 0 && distance[i - 1] > d) {
+                distance[i] = distance[i - 1];
+                fitness[i] = fitness[i - 1];
+                i--;
+            }
+            distance[i] = d;
+            fitness[i] = archive.fitness[a];
+        }
+        if (found > 0 && distance[0] == 0) {
+            return fitness[0];
+        }
+        double weightedSum = 0;
+        double weightSum = 0;
+        for (int i = 0; i < found; i++) {
+            double weight = 1 / (1 + (double) distance[i]);
+            weightedSum += weight * fitness[i];
+            weightSum += weight;
+        }
+        return weightSum > 0 ? weightedSum / weightSum : -Double.MAX_VALUE;
+    }
+
+    // Squared distance between a solution and archived solution a, or any
+    // value of at least limit once the sum reaches limit
+    private long getDistance(Population solutions, int individual, int a,
+            long limit) {
+        long sum = 0;
+        for (int k = 0; k < archive.nNumber && sum < limit; k++) {
+            long dx = solutions.getPos_x(individual, k)
+                    - archive.getPos_x(a, k);
+            long dy = solutions.getPos_y(individual, k)
+                    - archive.getPos_y(a, k);
+            long dOp = STEP_DISTANCE * (solutions.getIntensityOp(individual, k)
+                    - archive.getIntensityOp(a, k));
+            long dOn = solutions.isOn(individual, k) != archive.isOn(a, k)
+                    ? STEP_DISTANCE : 0;
+            sum += dx * dx + dy * dy + dOp * dOp + dOn * dOn;
+        }
+        return sum;
+    }
+}
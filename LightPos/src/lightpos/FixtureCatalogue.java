@@ -0,0 +1,253 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  class: FixtureCatalogue
+ * The light fixtures a solution can choose from. The intensityOp gene of a
+ * light is the index of its fixture in the catalogue.
+ *
+ * A fixture lights the floor below it with its candela value times a
+ * falloff factor of the horizontal distance d (inches) to a sensor:
+ *      1                   if d < 1 (the light is right above the sensor)
+ *      1 / d^falloff       if 1 <= d <= reach
+ *      0                   otherwise
+ * where reach = height * tan(beam / 2) is how far the beam spreads from the
+ * mounting height to the floor. LightPos_API turns every fixture into a
+ * lookup table of these factors once, so the fitness loop costs the same
+ * for every catalogue.
+ *
+ * Catalogue file: one fixture per line, "#" starts a comment. A fixture is
+ * a list of key=value pairs, watts and candela are required:
+ *      name=60W watts=60 candela=298.5856442 beam=110 height=108 falloff=1
+ * beam is in degrees (default 110), height in inches (default 108, a
+ * nine-foot ceiling) and falloff defaults to 1.
+ */
+public final class FixtureCatalogue {
+    // intensityOp is stored in a byte by checkpoints, the solution store
+    // and off-heap populations (OffHeapGenomes); at most 255 (unsigned)
+    public static final int MAX_FIXTURES = 127;
+
+    // The original lamps: 40, 60, 75, 100 and 150 W with a 110 degree spread
+    // from a nine-foot ceiling and 1/d falloff
+    public static final FixtureCatalogue DEFAULT = new FixtureCatalogue(
+            Arrays.asList(
+                new Fixture("40W", 40, 167.9544249),
+                new Fixture("60W", 60, 298.5856442),
+                new Fixture("75W", 75, 410.5552608),
+                new Fixture("100W", 100, 597.1712885),
+                new Fixture("150W", 150, 970.4033438)));
+
+    private final Fixture[] fixtures;
+
+    public FixtureCatalogue(List<Fixture> fixtures) {
+        if (fixtures.isEmpty() || fixtures.size() > MAX_FIXTURES) {
+            throw new IllegalArgumentException("A catalogue needs 1 to "
+                    + MAX_FIXTURES + " fixtures, not " + fixtures.size());
+        }
+        this.fixtures = fixtures.toArray(new Fixture[0]);
+    }
+
+    //number of fixtures (intensityOp is in [0, size()))
+    public int size() {
+        return fixtures.length;
+    }
+
+    public Fixture get(int intensityOp) {
+        return fixtures[intensityOp];
+    }
+
+    //watts of a fixture, 0 represents an incorrect value
+    public int getWatts(int intensityOp) {
+        if (intensityOp < 0 || intensityOp >= fixtures.length) {
+            return 0;
+        }
+        return fixtures[intensityOp].watts;
+    }
+
+    //candellas of a fixture, 0 represents an incorrect value
+    public double getIntensity(int intensityOp) {
+        if (intensityOp < 0 || intensityOp >= fixtures.length) {
+            return 0;
+        }
+        return fixtures[intensityOp].intensity;
+    }
+
+    // Read a catalogue file (format: see above)
+    public static FixtureCatalogue load(Path file) throws IOException {
+        List<Fixture> fixtures = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file,
+                StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                if (!line.trim().isEmpty()) {
+                    fixtures.add(Fixture.parse(line, lineNumber));
+                }
+            }
+        }
+        return new FixtureCatalogue(fixtures);
+    }
+
+    // Write every fixture (checkpoints)
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(fixtures.length);
+        for (Fixture fixture : fixtures) {
+            out.writeUTF(fixture.name);
+            out.writeInt(fixture.watts);
+            out.writeDouble(fixture.intensity);
+            out.writeDouble(fixture.beamAngle);
+            out.writeDouble(fixture.mountingHeight);
+            out.writeDouble(fixture.falloff);
+        }
+    }
+
+    // Read what writeTo wrote
+    static FixtureCatalogue readFrom(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 1 || size > MAX_FIXTURES) {
+            throw new IOException("Invalid fixture count " + size);
+        }
+        List<Fixture> fixtures = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            fixtures.add(new Fixture(in.readUTF(), in.readInt(),
+                    in.readDouble(), in.readDouble(), in.readDouble(),
+                    in.readDouble()));
+        }
+        return new FixtureCatalogue(fixtures);
+    }
+
+    /**
+     *  class: Fixture
+     * One light fixture of a catalogue (immutable).
+     */
+    public static final class Fixture {
+        private final String name;
+        private final int watts;
+        private final double intensity; // candellas
+        private final double beamAngle; // degrees
+        private final double mountingHeight; // inches
+        private final double falloff; // exponent of the distance
+
+        // A fixture with the spread and falloff of the original lamps
+        public Fixture(String name, int watts, double intensity) {
+            this(name, watts, intensity, 110, 108, 1);
+        }
+
+        public Fixture(String name, int watts, double intensity,
+                double beamAngle, double mountingHeight, double falloff) {
+            if (watts < 0 || !(intensity >= 0) || !(beamAngle > 0)
+                    || !(beamAngle < 180) || !(mountingHeight > 0)
+                    || !(falloff >= 0)) {
+                throw new IllegalArgumentException("Invalid fixture " + name);
+            }
+            this.name = name;
+            this.watts = watts;
+            this.intensity = intensity;
+            this.beamAngle = beamAngle;
+            this.mountingHeight = mountingHeight;
+            this.falloff = falloff;
+        }
+
+        static Fixture parse(String line, int lineNumber) {
+            Map<String, String> values = new HashMap<>();
+            for (String token : line.trim().split("\\s+")) {
+                int equals = token.indexOf('=');
+                if (equals <= 0) {
+                    throw new IllegalArgumentException("Line " + lineNumber
+                            + ": expected key=value but found " + token);
+                }
+                values.put(token.substring(0, equals),
+                        token.substring(equals + 1));
+            }
+            if (!values.containsKey("watts")
+                    || !values.containsKey("candela")) {
+                throw new IllegalArgumentException("Line " + lineNumber
+                        + ": watts and candela are required");
+            }
+            try {
+                String name = values.containsKey("name")
+                        ? values.remove("name") : "fixture" + lineNumber;
+                int watts = Integer.parseInt(values.remove("watts"));
+                double intensity = Double.parseDouble(
+                        values.remove("candela"));
+                double beamAngle = values.containsKey("beam")
+                        ? Double.parseDouble(values.remove("beam")) : 110;
+                double mountingHeight = values.containsKey("height")
+                        ? Double.parseDouble(values.remove("height")) : 108;
+                double falloff = values.containsKey("falloff")
+                        ? Double.parseDouble(values.remove("falloff")) : 1;
+                if (!values.isEmpty()) {
+                    throw new IllegalArgumentException("Line " + lineNumber
+                            + ": unknown keys " + values.keySet());
+                }
+                return new Fixture(name, watts, intensity, beamAngle,
+                        mountingHeight, falloff);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + lineNumber
+                        + ": " + e.getMessage(), e);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWatts() {
+            return watts;
+        }
+
+        //candellas
+        public double getIntensity() {
+            return intensity;
+        }
+
+        //degrees
+        public double getBeamAngle() {
+            return beamAngle;
+        }
+
+        //inches
+        public double getMountingHeight() {
+            return mountingHeight;
+        }
+
+        public double getFalloff() {
+            return falloff;
+        }
+
+        // Max horizontal distance (inches) the light reaches on the floor
+        public double getReach() {
+            return mountingHeight * Math.tan(Math.toRadians(beamAngle / 2));
+        }
+
+        // Whether both fixtures light the floor in the same shape (they can
+        // share one falloff table)
+        boolean hasSameProfile(Fixture other) {
+            return beamAngle == other.beamAngle
+                    && mountingHeight == other.mountingHeight
+                    && falloff == other.falloff;
+        }
+    }
+}
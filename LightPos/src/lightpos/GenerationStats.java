@@ -0,0 +1,93 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+/**
+ *  class: GenerationStats
+ * Statistics of one generation, passed to OptimizationListener. One object
+ * per LightPos_API is filled again after every generation, so nothing is
+ * allocated while optimizing.
+ */
+public final class GenerationStats {
+    int generation; // generations since startRun, starting at 1
+    int run; // runs since startRun (restarts + 1)
+    int evaluations; // children scored in this generation
+    int prunedEvaluations; // of those, the ones cut short by pruning
+    int skippedEvaluations; // children screened out before a full score
+    double estimateCorrelation; // of the screening estimate, NaN if none
+    long totalEvaluations; // solutions scored since startRun
+    long latencyNanos; // time taken by this generation
+    double bestFitness; // best parent after the selection
+    double meanFitness; // mean of all parents after the selection
+    final double[] mutationStepSize; // x, y, intensity option, on/off
+
+    GenerationStats(int pNumber) {
+        this.mutationStepSize = new double[pNumber];
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public int getRun() {
+        return run;
+    }
+
+    // Children actually scored (children found in the fitness cache are not)
+    public int getEvaluations() {
+        return evaluations;
+    }
+
+    // Evaluations that were given up early (see LightPos_API.setPruning)
+    public int getPrunedEvaluations() {
+        return prunedEvaluations;
+    }
+
+    // Children that screening (by the screening grid or the surrogate) kept
+    // from being scored in full, not counted in getEvaluations
+    public int getSkippedEvaluations() {
+        return skippedEvaluations;
+    }
+
+    // Rank correlation between the screening estimate and the real fitness
+    // of the children scored in full (1: same order), NaN for generations 
+    // that were not screened (see LightPos_API.setSurrogate)
+    public double getEstimateCorrelation() {
+        return estimateCorrelation;
+    }
+
+    public long getTotalEvaluations() {
+        return totalEvaluations;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public double getEvaluationsPerSecond() {
+        return latencyNanos > 0 ? evaluations * 1e9 / latencyNanos : 0;
+    }
+
+    public double getBestFitness() {
+        return bestFitness;
+    }
+
+    // Parents without any light on count as -Double.MAX_VALUE, so the mean
+    // can be -Infinity early in a run
+    public double getMeanFitness() {
+        return meanFitness;
+    }
+
+    // Mean mutation step size of parameter i (0: x, 1: y, 2: intensity option,
+    // 3: on/off)
+    public double getMutationStepSize(int i) {
+        return mutationStepSize[i];
+    }
+
+    public int getParameterCount() {
+        return mutationStepSize.length;
+    }
+}
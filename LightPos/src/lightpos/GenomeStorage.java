@@ -0,0 +1,64 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+/**
+ *  interface: GenomeStorage
+ * Where a Population keeps the lights (and the optional mutation step sizes)
+ * of its individuals: in heap arrays (HeapGenomes, the default) or in
+ * records outside the Java heap (OffHeapGenomes, see
+ * LightPos_API.setPopulationStorage). The fitness values and sensor grids
+ * stay in the Population.
+ */
+interface GenomeStorage {
+    int getPos_x(int individual, int lightIndex);
+
+    int getPos_y(int individual, int lightIndex);
+
+    int getIntensityOp(int individual, int lightIndex);
+
+    boolean isOn(int individual, int lightIndex);
+
+    void setLight(int individual, int lightIndex, int pos_x, int pos_y,
+            int intensityOp, boolean power);
+
+    // Allocate count step sizes per individual (null storage until then)
+    void enableStepSizes(int count);
+
+    void disableStepSizes();
+
+    boolean hasStepSizes();
+
+    double getStepSize(int individual, int parameter);
+
+    void setStepSize(int individual, int parameter, double value);
+
+    // Release memory that the garbage collector does not manage; the
+    // storage can not be used afterwards
+    default void close() {
+    }
+
+    /**
+     * copyIndividual
+     * Description: Copies the lights of individual "from" of the source over
+     * individual "to", and its step sizes if both have them. Implementations
+     * copy whole records when the source is stored the same way.
+     * @param stepSizeCount Step sizes per individual (0 if not enabled)
+     */
+    default void copyIndividual(GenomeStorage source, int from, int to,
+            int nNumber, int stepSizeCount) {
+        for (int k = 0; k < nNumber; k++) {
+            setLight(to, k, source.getPos_x(from, k),
+                    source.getPos_y(from, k),
+                    source.getIntensityOp(from, k), source.isOn(from, k));
+        }
+        if (hasStepSizes() && source.hasStepSizes()) {
+            for (int p = 0; p < stepSizeCount; p++) {
+                setStepSize(to, p, source.getStepSize(from, p));
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+/**
+ *  class: HeapGenomes
+ * Lights as flat primitive arrays on the heap (structure of arrays): light k
+ * of individual i is kept at index i * nNumber + k of every parameter array.
+ */
+final class HeapGenomes implements GenomeStorage {
+    private final int size;
+    private final int nNumber;
+    private final int[] pos_x;
+    private final int[] pos_y;
+    private final int[] intensityOp;
+    private final boolean[] power;
+    private int stepSizeCount;
+    private double[] stepSize;
+
+    public HeapGenomes(int size, int nNumber) {
+        this.size = size;
+        this.nNumber = nNumber;
+        this.pos_x = new int[size * nNumber];
+        this.pos_y = new int[size * nNumber];
+        this.intensityOp = new int[size * nNumber];
+        this.power = new boolean[size * nNumber];
+    }
+
+    @Override
+    public int getPos_x(int individual, int lightIndex) {
+        return pos_x[individual * nNumber + lightIndex];
+    }
+
+    @Override
+    public int getPos_y(int individual, int lightIndex) {
+        return pos_y[individual * nNumber + lightIndex];
+    }
+
+    @Override
+    public int getIntensityOp(int individual, int lightIndex) {
+        return intensityOp[individual * nNumber + lightIndex];
+    }
+
+    @Override
+    public boolean isOn(int individual, int lightIndex) {
+        return power[individual * nNumber + lightIndex];
+    }
+
+    @Override
+    public void setLight(int individual, int lightIndex, int pos_x,
+            int pos_y, int intensityOp, boolean power) {
+        int index = individual * nNumber + lightIndex;
+        this.pos_x[index] = pos_x;
+        this.pos_y[index] = pos_y;
+        this.intensityOp[index] = intensityOp;
+        this.power[index] = power;
+    }
+
+    @Override
+    public void enableStepSizes(int count) {
+        this.stepSizeCount = count;
+        this.stepSize = new double[size * count];
+    }
+
+    @Override
+    public void disableStepSizes() {
+        this.stepSizeCount = 0;
+        this.stepSize = null;
+    }
+
+    @Override
+    public boolean hasStepSizes() {
+        return stepSize != null;
+    }
+
+    @Override
+    public double getStepSize(int individual, int parameter) {
+        return stepSize[individual * stepSizeCount + parameter];
+    }
+
+    @Override
+    public void setStepSize(int individual, int parameter, double value) {
+        stepSize[individual * stepSizeCount + parameter] = value;
+    }
+
+    @Override
+    public void copyIndividual(GenomeStorage source, int from, int to,
+            int nNumber, int stepSizeCount) {
+        if (!(source instanceof HeapGenomes)) {
+            GenomeStorage.super.copyIndividual(source, from, to, nNumber,
+                    stepSizeCount);
+            return;
+        }
+        HeapGenomes heap = (HeapGenomes) source;
+        int src = from * nNumber;
+        int dst = to * nNumber;
+        System.arraycopy(heap.pos_x, src, pos_x, dst, nNumber);
+        System.arraycopy(heap.pos_y, src, pos_y, dst, nNumber);
+        System.arraycopy(heap.intensityOp, src, intensityOp, dst, nNumber);
+        System.arraycopy(heap.power, src, power, dst, nNumber);
+        if (hasStepSizes() && heap.hasStepSizes()) {
+            System.arraycopy(heap.stepSize, from * stepSizeCount, stepSize,
+                    to * stepSizeCount, stepSizeCount);
+        }
+    }
+}
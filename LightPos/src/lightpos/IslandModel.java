@@ -0,0 +1,177 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * IslandModel
+ * Runs several independent LightPos_API populations ("islands") at the same
+ * time, one thread each. Every island has its own random generator (split
+ * from the one of the model, so no state is shared between threads), step
+ * sizes and restarts. Every migrationInterval generations the best parents
+ * of each island replace the worst parents of another island, either the
+ * next island in a ring or a random one.
+ *
+ * All islands share one termination count: every generation of any island
+ * uses up one, so a budget of N generations costs the same number of fitness
+ * evaluations as a single LightPos_API run with a termination count of N.
+ * The budget applies per getBestSolution call: every call starts new runs
+ * on all islands with the full termination count.
+ */
+public class IslandModel implements AutoCloseable {
+    public enum Topology {
+        RING,   // island i sends to island i + 1 (the last one to the first)
+        RANDOM  // every island sends to a different random island
+    }
+
+    private final LightPos_API[] islands;
+    private final int terminationNumber; // generations per call
+    private final AtomicInteger terminationCount; // shared by all islands
+    private RandomSource generatorRandom = RandomSource.create();
+    private Topology topology = Topology.RING;
+    private int migrationInterval = 10; // generations between migrations
+    private int migrants = 1; // parents sent by every island
+    private double bestFitness = -Double.MAX_VALUE;
+
+    /**
+     * getBestSolution
+     * @return Returns the best parameter set found by any of the islands
+     * in terminationNumber generations (counted over all islands).
+     */
+    public light[] getBestSolution() {
+        terminationCount.set(terminationNumber);
+        ExecutorService executor = Executors.newFixedThreadPool(
+                islands.length);
+        List<Callable<Void>> epochs = new ArrayList<>();
+        for (LightPos_API island : islands) {
+            epochs.add(() -> {
+                // Stop early when the shared budget runs out
+                for (int g = 0; g < migrationInterval
+                        && terminationCount.getAndDecrement() > 0; g++) {
+                    island.runGeneration();
+                }
+                return null;
+            });
+        }
+        try {
+            for (LightPos_API island : islands) {
+                island.startRun();
+            }
+            while (terminationCount.get() > 0) {
+                for (Future<Void> epoch : executor.invokeAll(epochs)) {
+                    epoch.get();
+                }
+                migrate();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        light[] bestSolution = {};
+        bestFitness = -Double.MAX_VALUE;
+        for (LightPos_API island : islands) {
+            if (island.getCurrentBestFitness() > bestFitness) {
+                bestFitness = island.getCurrentBestFitness();
+                bestSolution = island.getCurrentBestSolution();
+            }
+        }
+        return bestSolution;
+    }
+
+    // Release the threads of every island (see LightPos_API.close)
+    @Override
+    public void close() {
+        for (LightPos_API island : islands) {
+            island.close();
+        }
+    }
+
+    // Fitness of the solution returned by the last getBestSolution call
+    public double getBestFitness() {
+        return bestFitness;
+    }
+
+    // Send the best parents of every island to its neighbour
+    private void migrate() {
+        if (islands.length < 2 || migrants == 0) {
+            return;
+        }
+        for (int i = 0; i < islands.length; i++) {
+            int target;
+            if (topology == Topology.RING) {
+                target = (i + 1) % islands.length;
+            } else {
+                // any island but this one
+                target = generatorRandom.nextInt(islands.length - 1);
+                if (target >= i) {
+                    target++;
+                }
+            }
+            islands[target].receiveMigrants(islands[i], migrants);
+        }
+    }
+
+    public void setTopology(Topology topology) {
+        this.topology = topology;
+    }
+
+    public void setMigrationInterval(int generations) {
+        this.migrationInterval = Math.max(1, generations);
+    }
+
+    // Number of parents every island sends, at most half of the parents so
+    // the best parents of an island are never overwritten by migrants
+    public void setMigrants(int count) {
+        this.migrants = Math.max(0, Math.min(count,
+                islands[0].getParentCount() / 2));
+    }
+
+    // Seeds every island (and the random topology) from one seed
+    public void setSeed(long seed) {
+        setRandomSource(RandomSource.create(seed));
+    }
+
+    // Draws the random topology from random and gives every island a
+    // generator split from it
+    public void setRandomSource(RandomSource random) {
+        generatorRandom = random;
+        for (LightPos_API island : islands) {
+            island.setRandomSource(generatorRandom.split());
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////CONSTRUCTORS/////////////////////////////////
+    // numIslands populations with the parameters of the LightPos_API full
+    // constructor; terminationNumber is shared by all islands (and spent
+    // again by every getBestSolution call).
+    public IslandModel(int numIslands, int numParents, int numChildren, int n,
+            int width, int height, double mutationStSz, int terminationNumber)
+    {
+        islands = new LightPos_API[numIslands];
+        for (int i = 0; i < numIslands; i++) {
+            // The islands never stop on their own, the shared termination
+            // count decides when the model stops
+            islands[i] = new LightPos_API(numParents, numChildren, n, width,
+                    height, mutationStSz, Integer.MAX_VALUE, 1);
+            islands[i].setRandomSource(generatorRandom.split());
+        }
+        this.terminationNumber = terminationNumber;
+        terminationCount = new AtomicInteger(terminationNumber);
+    }
+}
@@ -12,9 +12,14 @@ package lightpos;
 public class LightPos {
 
     /**
-     * @param args the command line arguments
+     * @param args the command line arguments: none to optimize the room
+     * below, or "jobFile outputFile [workers]" to run a BatchRunner job file
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws java.io.IOException {
+        if (args.length >= 2) {
+            BatchRunner.main(args);
+            return;
+        }
         int numParents = 300;
         int numOffspring = 3000;
         double mutationInitialStepSize = 2;
@@ -22,12 +27,29 @@ public class LightPos {
         int nL = 14; //number of lights
         int roomWidth = 96; //inches
         int roomLength = 96; // inches
+        int numThreads = 0; // evaluation threads (0 = all processors)
         //int optimalLightHeight = 36; // inches (Not currently implemented
         
-        LightPos_API myApi = new LightPos_API(numParents, numOffspring, nL, 
-                roomWidth, roomLength, 
-                mutationInitialStepSize, terminationCount);
-        light[] bestSolution = myApi.getBestSolution();
+        int numIslands = 1; // more than 1 runs an island model, one per thread
+        
+        light[] bestSolution;
+        double bestFitness;
+        if (numIslands > 1) {
+            try (IslandModel islands = new IslandModel(numIslands, 
+                    numParents, numOffspring, nL, roomWidth, roomLength, 
+                    mutationInitialStepSize, terminationCount)) {
+                bestSolution = islands.getBestSolution();
+                bestFitness = islands.getBestFitness();
+            }
+        } else {
+            try (LightPos_API myApi = new LightPos_API(numParents, 
+                    numOffspring, nL, roomWidth, roomLength, 
+                    mutationInitialStepSize, terminationCount, numThreads)) {
+                myApi.setListener(new ConsoleListener());
+                bestSolution = myApi.getBestSolution();
+                bestFitness = myApi.getBestFitness();
+            }
+        }
         System.out.println("\n\nBest solution for " + roomWidth + "\"x" + 
                 roomLength +"\" room: {");
         for (int i = 0; i < bestSolution.length; i++) {
@@ -40,7 +62,7 @@ public class LightPos {
                 System.out.println("\t W=" + bestSolution[i].getWatts());
             }
         }
-        System.out.println("} = " + myApi.getFitness(bestSolution));
+        System.out.println("} = " + bestFitness);
     }
     
 }
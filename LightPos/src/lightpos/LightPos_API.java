@@ -1,8 +1,20 @@
 package lightpos;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * LightPos_API
@@ -44,261 +56,861 @@ import java.util.Scanner;
  * 
  * 
  */
-public class LightPos_API {
-    private final light[][] parents; // 2D array: 1st = number, 2nd = per result
-    private final light[][] children;
+public class LightPos_API implements AutoCloseable {
+    public enum Strategy {
+        SELF_ADAPTIVE_ES, // discrete recombination, self-adaptive mutation
+        CMA_ES, // covariance matrix adaptation of the light positions
+        NSGA_II // Pareto front of illumination quality and energy
+    }
+    
+    public enum Storage {
+        HEAP, // flat arrays on the Java heap
+        DIRECT, // records in direct buffers, outside the heap
+        MAPPED // records in buffers mapped from temporary files
+    }
+    
+    private final Population parents; // flat arrays: light k of individual i
+    private final Population children; // is stored at i * nNumber + k
+    private final int[] childParent; // parent index chosen for each child
+    private final TopSelection topSelection; // finds the best children
     private final double mutationInitialStepSize;
-    private final double[] mutationStepSize;
     private int terminationCount;
     private final int nNumber; // number of lights
     private final int pNumber = 4; // number of light parameters
-    private final double overallLearningRate;
-    private final double coordinateLearningRate;
+    // Creates the children every generation, see setStrategy
+    private Strategy strategyType = Strategy.SELF_ADAPTIVE_ES;
+    private SearchStrategy strategy;
     private final int roomWidth;
     private final int roomLength;
+    private final int gridRows;
+    private final int gridColumns;
+    // The offset from the origin to center the grid in the room in inches
+    private final int originRowOffset;
+    private final int originColumnOffset;
+    // Incremental updates of a stored sensor grid before it is rebuilt
+    private static final int INCREMENTAL_REFRESH = 32;
+    private static final int INCREMENTAL_CELL_COST = 24;
+    
+    // The fixtures a light can choose from (intensityOp) and the falloff
+    // table of each fixture for every (dx, dy) offset, see buildProfile. 
+    // Fixtures with the same profile share one table. Offsets up to 
+    // profileRows - 1 and profileColumns - 1 inches are in the table.
+    private final FixtureCatalogue catalogue;
+    private final double[][] fixtureProfile;
+    private final int[] profileRows;
+    private final int[] profileColumns;
+    private final int maxProfileRows; // of all fixtures
+    private final int maxProfileColumns;
+    
+    // Optional room shape and occluders (null for the empty rectangle), see
+    // setRoomGeometry. Light positions are grouped into cells of 
+    // visibilityPitch x visibilityPitch inches, and every cell has a window
+    // of visibilityRows x visibilityColumns sensors (starting at the first
+    // sensor the fixtures can reach from the cell). Bit 
+    //      cell * visibilityCellBits + row * visibilityColumns + column
+    // of visibility is set when that sensor of the window can be seen from 
+    // the cell. blockedPositions has a bit for every light position outside
+    // the room, such lights light nothing. sensorWeight (screeningWeight for
+    // the screening grid) is 1 for the sensors in the room and 0 for the 
+    // others, which are left out of the variation.
+    private static final long MAX_VISIBILITY_BITS = 1L << 28; // 32 MB
+    private RoomGeometry geometry;
+    private long[] visibility;
+    private long[] blockedPositions;
+    private int visibilityPitch;
+    private int visibilityCellsY;
+    private int visibilityRows;
+    private int visibilityColumns;
+    private int visibilityCellBits;
+    private double[] sensorWeight;
+    private double[] screeningWeight;
+    
+    // Sensor grid scratch space, one per evaluating thread
+    private final ThreadLocal<double[]> lightGridBuffer;
+    
+    // Offspring evaluation: a pool is only created when more than one thread
+    // is requested, otherwise the children are scored on the calling thread.
+    private final int evaluationThreads;
+    private final ForkJoinPool evaluationPool;
+
+    // Optional fitness cache (null when disabled), see setFitnessCacheSize.
+    // childSource tells for every child whether it is scored (SCORED_CHILD),
+    // was found in the cache (CACHED_CHILD) or is identical to the child at
+    // that index. childSource and childKey are allocated with the first
+    // cache.
+    private FitnessCache fitnessCache;
+    private int[] childSource;
+    private FitnessCache.Key[] childKey;
+    private final HashMap<FitnessCache.Key, Integer> pendingChildren = 
+            new HashMap<>();
+    private static final int SCORED_CHILD = -1;
+    private static final int CACHED_CHILD = -2;
+    
+    // Multi-fidelity evaluation (see setScreening): every child is first 
+    // scored on a sensor grid with screeningStride times the sensor pitch,
+    // and only the shortlisted ones are then scored on the full grid. Every
+    // SCREENING_AUDIT_INTERVAL screened generations all children are scored
+    // on the full grid to count how often screening changed the selection.
+    // shortlisted and the buffers below are allocated when screening or
+    // the surrogate is first enabled (see allocateScreeningBuffers).
+    private int screeningStride = 1; // 1 = disabled
+    private double screeningFraction = 1;
+    private int screeningRows;
+    private int screeningColumns;
+    private double screeningIntensityScale;
+    private double screeningVariationScale;
+    private boolean[] shortlisted;
+    private boolean shortlistOnly = false; // others are not fully scored
+    private static final int SCREENING_AUDIT_INTERVAL = 25;
+    private int screenedGenerations = 0;
+    private int screeningAudits = 0;
+    private int screeningChanges = 0;
+    private long screeningMisses = 0;
+    private long screeningEvaluations = 0;
+    
+    // Surrogate screening (see setSurrogate): once the surrogate knows 
+    // enough solutions, children are screened by its estimate instead of
+    // the screening grid. estimatedFitness keeps the estimates of a screened
+    // generation so their accuracy can be reported (estimateCorrelation, 
+    // NaN when the generation was not screened); rankBuffer, estimateRank
+    // and fitnessRank are scratch space for it.
+    private static final int SURROGATE_NEIGHBOURS = 5;
+    private FitnessSurrogate surrogate; // null when disabled
+    private double surrogateFraction = 1;
+    private boolean surrogateScreening = false; // in this generation
+    private double[] estimatedFitness;
+    private double[] rankBuffer;
+    private int[] estimateRank;
+    private int[] fitnessRank;
+    private double estimateCorrelation = Double.NaN;
+    private long skippedEvaluations = 0;
+    
+    // Warm start (see setWarmStart): init seeds warmStartFraction of the
+    // parents from the layouts of the most similar stored rooms, and the
+    // best solution of every getBestSolution call is added to the store.
+    private SolutionStore solutionStore; // null when disabled
+    private double warmStartFraction = 0;
+    private IOException solutionStoreError;
+    
+    // Upper-bound pruning (see setPruning): the evaluation of a child stops
+    // as soon as its fitness can no longer reach the threshold of the 
+    // evaluating thread (see PruningThreshold). latticeSum[op] holds prefix
+    // sums of the profile of fixture op over the sensor lattice (see 
+    // buildLatticeSum), so the overall intensity of a solution is bounded 
+    // from its light positions alone. pruned marks the children whose 
+    // evaluation was cut short in this generation (null until pruning is 
+    // first enabled, see isPruned).
+    private boolean pruning = false;
+    private double[][] latticeSum;
+    private int[] latticeRows;
+    private int[] latticeColumns;
+    private double[] latticeSumMargin;
+    private final ThreadLocal<PruningThreshold> pruningThreshold;
+    private int pruningRound = 0;
+    private boolean[] pruned;
+    private long prunedEvaluations = 0;
+    private static final double PRUNED = Double.NEGATIVE_INFINITY;
+    // Relative slack of the bounds, far more than the rounding errors of 
+    // the sums they bound
+    private static final double PRUNING_TOLERANCE = 1e-9;
+    
+    // State of the current optimization (see getBestSolution). A run ends
+    // when it has not improved for stagnationLimit generations, then the 
+    // mutation step size is reset and another run starts from the current
+    // parents.
+    private int stagnationLimit = 150;
+    private double bestFitness = -Double.MAX_VALUE;
+    private light[] bestSolution = {};
+    private double bestPerRunFitness = -Double.MAX_VALUE;
+    private light[] bestPerRunSolution = {};
+    private int noProgressCount = 0;
+    
+    // Optional budgets besides the termination count (see setTimeBudget, 
+    // setEvaluationBudget, setTargetFitness and stop). They are checked
+    // after every generation; the optimization ends after the generation in
+    // which the first of them runs out.
+    private long timeBudgetNanos = Long.MAX_VALUE;
+    private long evaluationBudget = Long.MAX_VALUE;
+    private double targetFitness = Double.POSITIVE_INFINITY;
+    private long startTime;
+    private volatile boolean stopRequested = false;
+    private boolean terminated = false;
+    // Best solution so far, replaced (never modified) on every improvement
+    // so other threads can read it while the optimization runs
+    private volatile BestSoFar bestSoFar = BestSoFar.NONE;
+    
+    // Progress reporting, see setListener. generation and run count from 
+    // startRun, evaluationCount counts every solution scored since then.
+    private OptimizationListener listener = OptimizationListener.NONE;
+    private final GenerationStats generationStats;
+    private int generation = 0;
+    private int run = 0;
+    private long evaluationCount = 0;
+    
+    // Periodic checkpoints (null when disabled), see setCheckpoint
+    private CheckpointWriter checkpointWriter;
+    private static final int CHECKPOINT_MAGIC = 0x4C50434B; // "LPCK"
+    private static final int CHECKPOINT_VERSION = 6;
 
-    // Randomization generator
-    private final Random generatorRandom = new Random();
+    // Randomization generator, only used by the thread that runs the
+    // generations (replaced when a checkpoint is loaded, see RandomSource)
+    private RandomSource generatorRandom = RandomSource.create();
     
     /**
      * getBestSolution
      * @return Returns a parameter set that gives the best fitness.
      */
     public light[] getBestSolution() {
-        int fitIndex;
-        double curFitness;
-        double bestPerRunFitness = -Double.MAX_VALUE;
-        double bestFitness = -Double.MAX_VALUE;
-        light[] bestPerRunSolution = {};
-        light[] bestSolution = {};
-        int noProgressCount = 0;
+        startRun();
+        
+        // Runs keep restarting after one run has stagnated until the 
+        // termination counter or a budget has run out (see runGeneration).
+        do {
+            runGeneration();
+        } while (!terminated);
         
+        if (checkpointWriter != null) {
+            checkpointWriter.await();
+        }
+        storeBestSolution();
+        return bestSolution;
+    }
+    
+    /**
+     * resumeBestSolution
+     * @return Continues an optimization restored by loadCheckpoint until the
+     * termination count has reached zero and returns the best parameter set,
+     * exactly as the interrupted getBestSolution call would have.
+     */
+    public light[] resumeBestSolution() {
+        // A time budget starts again with the resumed part
+        startTime = System.nanoTime();
+        stopRequested = false;
+        terminated = terminationCount <= 0;
+        while (!terminated) {
+            runGeneration();
+        }
+        if (checkpointWriter != null) {
+            checkpointWriter.await();
+        }
+        storeBestSolution();
+        return bestSolution;
+    }
+    
+    /**
+     * startRun
+     * Description: Randomizes the parents and forgets the best solutions 
+     * found so far, ready for the first call to runGeneration.
+     */
+    void startRun() {
+        startTime = System.nanoTime();
+        stopRequested = false;
+        terminated = false;
+        bestFitness = -Double.MAX_VALUE;
+        bestSolution = new light[0];
+        bestSoFar = BestSoFar.NONE;
+        generation = 0;
+        run = 0;
+        evaluationCount = 0;
         init();
+        if (solutionStore != null && warmStartFraction > 0) {
+            // A stored layout can already be the best one (a repeated room)
+            int fitIndex = getFittestIndex(parents);
+            bestFitness = parents.fitness[fitIndex];
+            bestSolution = parents.toLights(fitIndex, catalogue);
+            bestSoFar = new BestSoFar(bestFitness, bestSolution);
+        }
+        startNextRun();
+    }
+    
+    // Start another run from the current parents
+    private void startNextRun() {
+        strategy.startRun(parents);
+        bestPerRunFitness = -Double.MAX_VALUE;
+        noProgressCount = 0;
+        run++;
+    }
+    
+    /**
+     * runGeneration
+     * Description: Creates and selects one generation and counts it against
+     * the termination count. Once the current run has stagnated, or the 
+     * termination count or a budget has run out, its best solution is 
+     * compared to the overall best and (if there is time left) another run
+     * is started.
+     */
+    void runGeneration() {
+        int fitIndex;
+        double curFitness;
+        // Only time the generation when someone is listening
+        boolean reporting = listener != OptimizationListener.NONE;
+        long startTime = reporting ? System.nanoTime() : 0;
+        long startEvaluations = evaluationCount;
+        long startPruned = prunedEvaluations;
+        long startSkipped = skippedEvaluations;
         
-        // The out loop will keep doing more runs after one run has stagnated
-        // until the termination counter has reached zero.
-        do
-        {
-            //init();
-            resetMutationStepSize();
-            bestPerRunFitness = -Double.MAX_VALUE;
-            noProgressCount = 0;
-            do {
-                noProgressCount++;
-                generateOffspring();
-                selectParents();
-                fitIndex = getFittestIndex(parents);
-                curFitness = getFitness(parents[fitIndex]);
-
-                //Check to see if it beats the current best solution
-                if (curFitness > bestPerRunFitness)
-                {
-                    noProgressCount = 0; // reset no progress counter
-                    System.out.println("\nCurrent run best fitness: " + curFitness);
-                    bestPerRunFitness = curFitness;
-                    bestPerRunSolution = parents[fitIndex];
-                }
+        generation++;
+        noProgressCount++;
+        generateOffspring();
+        selectParents();
+        fitIndex = getFittestIndex(parents);
+        curFitness = parents.fitness[fitIndex];
 
-                System.out.print(".");
-                terminationCount--;
-            } while (terminationCount > 0 && noProgressCount < 150);
-            
-            if (bestPerRunFitness > bestFitness) {
-                bestFitness = bestPerRunFitness;
-                bestSolution = bestPerRunSolution;
-                System.out.println("\nCurrent best overall fitness: " + bestFitness);
+        //Check to see if it beats the current best solution
+        if (curFitness > bestPerRunFitness)
+        {
+            noProgressCount = 0; // reset no progress counter
+            listener.runImproved(generation, curFitness);
+            bestPerRunFitness = curFitness;
+            bestPerRunSolution = parents.toLights(fitIndex, catalogue);
+            if (curFitness > bestSoFar.fitness) {
+                bestSoFar = new BestSoFar(curFitness, bestPerRunSolution);
             }
-            
-            if (terminationCount > 0)
+        }
+
+        if (reporting) {
+            reportGeneration(startTime, evaluationCount - startEvaluations,
+                    prunedEvaluations - startPruned, 
+                    skippedEvaluations - startSkipped, curFitness);
+        }
+        terminationCount--;
+        terminated = terminationCount <= 0 || isBudgetExhausted();
+        
+        if (terminated || noProgressCount >= stagnationLimit) {
+            finishRun();
+            if (!terminated)
             {
-                //System.out.println("\nStarting another run...");
-                System.out.println("\nResetting mutation step size...");
+                startNextRun();
+                listener.runRestarted(generation, run);
             }
-        }while(terminationCount > 0);
-        
+        }
         
-        return bestSolution;
+        // The state between two generations is all a resume needs
+        if (checkpointWriter != null && (terminated 
+                || generation % checkpointWriter.getInterval() == 0)) {
+            checkpointWriter.submit(saveState());
+        }
+    }
+    
+    // Whether one of the optional budgets has run out
+    private boolean isBudgetExhausted() {
+        return stopRequested
+                || evaluationCount >= evaluationBudget
+                || bestSoFar.fitness >= targetFitness
+                || (timeBudgetNanos != Long.MAX_VALUE 
+                        && System.nanoTime() - startTime >= timeBudgetNanos);
+    }
+    
+    // Fill in the generation statistics and pass them to the listener
+    private void reportGeneration(long startTime, long evaluations, 
+            long pruned, long skipped, double curFitness) {
+        double fitnessSum = 0;
+        for (int i = 0; i < parents.size(); i++) {
+            fitnessSum += parents.fitness[i];
+        }
+        generationStats.generation = generation;
+        generationStats.run = run;
+        generationStats.evaluations = (int) evaluations;
+        generationStats.prunedEvaluations = (int) pruned;
+        generationStats.skippedEvaluations = (int) skipped;
+        generationStats.estimateCorrelation = estimateCorrelation;
+        generationStats.totalEvaluations = evaluationCount;
+        generationStats.bestFitness = curFitness;
+        generationStats.meanFitness = fitnessSum / parents.size();
+        for (int i = 0; i < pNumber; i++) {
+            generationStats.mutationStepSize[i] = strategy.getStepSize(i);
+        }
+        generationStats.latencyNanos = System.nanoTime() - startTime;
+        listener.generationFinished(generationStats);
+    }
+    
+    // Keep the best solution of the current run if it beats the overall best
+    private void finishRun() {
+        if (bestPerRunFitness > bestFitness) {
+            bestFitness = bestPerRunFitness;
+            bestSolution = bestPerRunSolution;
+            listener.bestImproved(generation, bestFitness);
+        }
+    }
+    
+    // Add the best solution to the solution store (if there is one)
+    private void storeBestSolution() {
+        if (solutionStore == null) {
+            return;
+        }
+        try {
+            solutionStore.add(roomWidth, roomLength, catalogue, geometry,
+                    bestSolution, bestFitness);
+            solutionStoreError = null;
+        } catch (IOException e) {
+            // The solution is still returned, only the store misses it
+            solutionStoreError = e;
+        }
     }
     
     /** 
      * init
      * Description: Set parents to randomized values between the given bounds:
+     * With a warm start (see setWarmStart) the first parents are stored 
+     * layouts instead, scaled to this room; a layout that seeds more than
+     * one parent has its lights shifted randomly in the later copies.
      */
-    private void init() {
+    void init() {
+        List<SolutionStore.StoredSolution> stored = solutionStore != null
+                && warmStartFraction > 0
+                ? solutionStore.getNearest(roomWidth, roomLength, catalogue,
+                        geometry, nNumber, parents.size())
+                : new ArrayList<>();
+        int warmStarted = stored.isEmpty() ? 0 
+                : (int) Math.ceil(warmStartFraction * parents.size());
         // Initialize parent values:
-        for (light[] parent : parents) {
-            for (int i = 0; i < nNumber; i++) {
-                parent[i] = new light(
-                        generatorRandom.nextInt(roomWidth+1),
-                        generatorRandom.nextInt(roomLength+1),
-                        generatorRandom.nextInt(5),
-                        generatorRandom.nextBoolean());
+        for (int p = 0; p < parents.size(); p++) {
+            if (p < warmStarted) {
+                stored.get(p % stored.size()).copyTo(parents, p, roomWidth,
+                        roomLength, catalogue.size(), p < stored.size() 
+                                ? 0 : mutationInitialStepSize, 
+                        generatorRandom);
+            } else {
+                for (int i = 0; i < nNumber; i++) {
+                    parents.setLight(p, i,
+                            generatorRandom.nextInt(roomWidth+1),
+                            generatorRandom.nextInt(roomLength+1),
+                            generatorRandom.nextInt(catalogue.size()),
+                            generatorRandom.nextBoolean());
+                }
+            }
+            if (parents.hasLightGrids()) {
+                refreshLightGrid(parents, p);
+            }
+            parents.fitness[p] = getFitness(parents, p);
+            if (surrogate != null && parents.fitness[p] > -Double.MAX_VALUE) {
+                surrogate.add(parents, p);
             }
         }
+        evaluationCount += parents.size();
     }
     
-    //Reset the mutation step size
-    private void resetMutationStepSize(){
-        for (int i = 0; i < pNumber; i++) {
-            mutationStepSize[i] = mutationInitialStepSize;
+    /**
+     * generateOffspring
+     * Description: Lets the strategy create all child parameter sets from 
+     * the parents (see SearchStrategy).
+     */
+    void generateOffspring()
+    {
+        strategy.generateOffspring(parents, children, childParent, 
+                generatorRandom);
+    }
+    
+    /**
+     * selectParents
+     * Description: Gets the fitness of all the children, finds the children
+     * with the highest fitness, and sets all the parent parameter sets to 
+     * those child sets.
+     */
+    void selectParents()
+    {
+        // Get the fitness of all the children
+        if (fitnessCache != null) {
+            lookupCachedFitness();
+        }
+        surrogateScreening = surrogate != null && surrogate.isReady();
+        estimateCorrelation = Double.NaN;
+        if (screeningStride > 1 || surrogateScreening) {
+            screenChildren();
+        } else {
+            scoreChildren(false);
+            // Only the first of identical uncached children is scored
+            evaluationCount += fitnessCache != null 
+                    ? pendingChildren.size() : children.size();
+        }
+        if (surrogate != null) {
+            trainSurrogate();
+        }
+        if (fitnessCache != null) {
+            storeCachedFitness();
+        }
+        shortlistOnly = false;
+        if (!strategy.selectParents(parents, children)) {
+            // Find the best children (best first) without sorting all of them
+            int[] bestChildren = topSelection.selectBest(children.fitness, 
+                    children.size(), parents.size());
+
+            // Select the children with the best fitness to succeed the 
+            // parents. We assume that the number of parents is ALWAYS less 
+            // than the number of children.
+            for (int i = 0; i < parents.size(); i++) {
+                parents.copyIndividual(children, bestChildren[i], i);
+            }
+        }
+        // Children that were found in the cache have no sensor grid yet
+        for (int i = 0; i < parents.size(); i++) {
+            if (parents.hasLightGrids() && parents.incrementalCount[i] < 0) {
+                refreshLightGrid(parents, i);
+            }
+        }
+        strategy.parentsSelected(parents);
+    }
+    
+    // Score the children (on the screening grid or the full one) on this
+    // thread or the evaluation pool
+    private void scoreChildren(boolean screening)
+    {
+        boolean pruneChildren = !screening && isPruningActive();
+        if (pruneChildren) {
+            Arrays.fill(pruned, false);
+            pruningRound++;
+        }
+        if (evaluationPool == null) {
+            evaluateChildren(0, children.size(), screening);
+        } else {
+            evaluationPool.invoke(new EvaluationTask(this, 0, 
+                    children.size(), 
+                    Math.max(1, children.size() / (evaluationThreads * 4)),
+                    screening));
+        }
+        if (pruneChildren) {
+            for (int i = 0; i < children.size(); i++) {
+                if (pruned[i]) {
+                    prunedEvaluations++;
+                }
+            }
         }
     }
     
+    // Whether the full evaluation of the children can be cut short (only 
+    // the best parents.size() children matter to the strategy)
+    private boolean isPruningActive()
+    {
+        return pruning && !strategy.usesEveryChildFitness();
+    }
+    
     /**
-     * generateOffspring
-     * Description: Apply global recombination to create all child parameter
-     * sets. Mutate each of the new child sets.
+     * screenChildren
+     * Description: Scores every child on the coarse screening grid (or 
+     * estimates its fitness with the surrogate), shortlists the best 
+     * screeningFraction (surrogateFraction) of them, at least as many as 
+     * there are parents, and scores only those on the full grid. The other
+     * children get -Double.MAX_VALUE so they are never selected. In audit
+     * generations every child is scored on the full grid and the selection
+     * is compared with the shortlist.
      */
-    private void generateOffspring()
+    private void screenChildren()
     {
-        // Apply global recobmination to create all child sets
-        for (int i = 0; i < children.length; i++) {
-            children[i] = recombine(
-                    parents[generatorRandom.nextInt(parents.length)], 
-                    parents[generatorRandom.nextInt(parents.length)]);
+        double fraction = surrogateScreening 
+                ? surrogateFraction : screeningFraction;
+        int count = Math.min(children.size(), Math.max(parents.size(), 
+                (int) Math.ceil(fraction * children.size())));
+        boolean audit = 
+                ++screenedGenerations % SCREENING_AUDIT_INTERVAL == 0;
+        
+        scoreChildren(true);
+        copyIdenticalFitness();
+        System.arraycopy(children.fitness, 0, estimatedFitness, 0, 
+                children.size());
+        int[] best = topSelection.selectBest(children.fitness, 
+                children.size(), count);
+        Arrays.fill(shortlisted, false);
+        for (int i = 0; i < count; i++) {
+            shortlisted[best[i]] = true;
+        }
+        
+        shortlistOnly = !audit;
+        scoreChildren(false);
+        for (int i = 0; i < children.size(); i++) {
+            if (fitnessCache != null && childSource[i] != SCORED_CHILD) {
+                continue;
+            }
+            if (!surrogateScreening) {
+                screeningEvaluations++;
+            }
+            if (!shortlistOnly || shortlisted[i]) {
+                evaluationCount++;
+            } else {
+                skippedEvaluations++;
+                children.fitness[i] = -Double.MAX_VALUE;
+                if (children.hasLightGrids()) {
+                    children.incrementalCount[i] = -1; // no sensor grid
+                }
+            }
         }
+        estimateCorrelation = getEstimateCorrelation();
         
-        // Use uncorrelated mutations with n step sizes to modify each of the
-        // offspring produced via recombination (above).
-        for (int i = 0; i < children.length; i++) {
-            children[i] = mutate(children[i]);
+        if (audit) {
+            // Count the truly best children that screening would have lost
+            copyIdenticalFitness();
+            best = topSelection.selectBest(children.fitness, children.size(),
+                    parents.size());
+            int missed = 0;
+            for (int i = 0; i < parents.size(); i++) {
+                if (!shortlisted[best[i]]) {
+                    missed++;
+                }
+            }
+            screeningAudits++;
+            screeningMisses += missed;
+            if (missed > 0) {
+                screeningChanges++;
+            }
         }
     }
     
+    // Whether child i got its real fitness from a full evaluation in this
+    // generation (not from the cache, and not skipped or pruned)
+    private boolean isFullyScored(int i)
+    {
+        return (fitnessCache == null || childSource[i] == SCORED_CHILD)
+                && (!shortlistOnly || shortlisted[i]) && !isPruned(i);
+    }
+    
+    // Whether the evaluation of child i was cut short in this generation
+    private boolean isPruned(int i)
+    {
+        return pruned != null && pruned[i];
+    }
+    
     /**
-     * selectParents
-     * Description: Gets the fitness of all the children, sorts the resulting
-     * fitness value/child index pairs, and sets all the parent parameter sets
-     * to the child sets that have the highest fitness.
+     * getEstimateCorrelation
+     * @return Returns the rank correlation (Spearman) between the screening
+     * estimate and the real fitness of the children scored in full this 
+     * generation, or NaN if fewer than 3 were. Ties are ranked by index. 
+     * Outside audits only shortlisted children are scored in full, which 
+     * makes the correlation lower than over all children.
      */
-    private void selectParents()
+    private double getEstimateCorrelation()
     {
-        // Get the fitness of all the children
-        double [][]currentFitness = new double[children.length][2];
-        for (int i = 0; i < children.length; i++) {
-            currentFitness[i][0] = getFitness(children[i]);
-            if (Double.isNaN(currentFitness[i][0]))
-            {
-                // If, for whatever reason, an invalid value is found
-                currentFitness[i][0] = -Double.MAX_VALUE;
+        int n = 0;
+        for (int i = 0; i < children.size(); i++) {
+            if (isFullyScored(i)) {
+                rankBuffer[n++] = estimatedFitness[i];
             }
-            currentFitness[i][1] = i;
         }
-        // Sort the children by fitness
-        Arrays.sort(currentFitness, (double[] o1, double[] o2) -> 
-                Double.compare(o1[0], o2[0]));
-        
-        // Select the children with the best fitness to succeed the parents
-        // We assume that the number of parents is ALWAYS less than the number 
-        // of children.
-        for (int i = 0; i < parents.length; i++) {
-            parents[i] = children[
-                    (int)(currentFitness[children.length-i-1][1])];
+        if (n < 3) {
+            return Double.NaN;
+        }
+        int[] order = topSelection.selectBest(rankBuffer, n, n);
+        for (int r = 0; r < n; r++) {
+            estimateRank[order[r]] = r;
+        }
+        n = 0;
+        for (int i = 0; i < children.size(); i++) {
+            if (isFullyScored(i)) {
+                rankBuffer[n++] = children.fitness[i];
+            }
+        }
+        order = topSelection.selectBest(rankBuffer, n, n);
+        for (int r = 0; r < n; r++) {
+            fitnessRank[order[r]] = r;
+        }
+        double squaredDifferences = 0;
+        for (int j = 0; j < n; j++) {
+            double difference = estimateRank[j] - fitnessRank[j];
+            squaredDifferences += difference * difference;
+        }
+        return 1 - 6 * squaredDifferences / ((double) n * ((double) n * n - 1));
+    }
+    
+    // Add the children scored in full this generation to the surrogate 
+    // (infeasible ones would only drag the estimates down)
+    private void trainSurrogate()
+    {
+        for (int i = 0; i < children.size(); i++) {
+            if (isFullyScored(i) && children.fitness[i] > -Double.MAX_VALUE) {
+                surrogate.add(children, i);
+            }
+        }
+    }
+    
+    // Give children that are identical to an earlier child of this 
+    // generation (see lookupCachedFitness) the fitness of that child
+    private void copyIdenticalFitness()
+    {
+        if (fitnessCache == null) {
+            return;
+        }
+        for (int i = 0; i < children.size(); i++) {
+            if (childSource[i] >= 0) {
+                children.fitness[i] = children.fitness[childSource[i]];
+            }
+        }
+    }
+    
+    /**
+     * lookupCachedFitness
+     * Description: Looks every child up in the fitness cache before the 
+     * children are scored. Children found in the cache, or identical to an 
+     * earlier child of this generation, are not scored again (see 
+     * childSource).
+     */
+    private void lookupCachedFitness()
+    {
+        Double cachedFitness;
+        Integer firstChild;
+        pendingChildren.clear();
+        for (int i = 0; i < children.size(); i++) {
+            childKey[i] = FitnessCache.keyOf(children, i);
+            firstChild = pendingChildren.get(childKey[i]);
+            if (firstChild != null) {
+                childSource[i] = firstChild;
+                fitnessCache.countHit();
+                continue;
+            }
+            cachedFitness = fitnessCache.get(childKey[i]);
+            if (cachedFitness != null) {
+                childSource[i] = CACHED_CHILD;
+                children.fitness[i] = cachedFitness;
+                if (children.hasLightGrids()) {
+                    children.incrementalCount[i] = -1; // no sensor grid
+                }
+            } else {
+                childSource[i] = SCORED_CHILD;
+                pendingChildren.put(childKey[i], i);
+            }
         }
     }
     
     /**
-     * recombine
-     * @param x light array representing a solution
-     * @param y light array representing a solution
-     * @return Return either x or y (discrete recombination)
+     * storeCachedFitness
+     * Description: Adds the children scored this generation to the fitness
+     * cache and copies their fitness to the identical children.
      */
-    private light[] recombine(light[] x, light[] y) {
-        if (generatorRandom.nextBoolean())
-            return x;
-        else
-            return y;
+    private void storeCachedFitness()
+    {
+        for (int i = 0; i < children.size(); i++) {
+            if (childSource[i] == SCORED_CHILD) {
+                // Children dropped by screening or pruned have no real 
+                // fitness
+                if ((!shortlistOnly || shortlisted[i]) && !isPruned(i)) {
+                    fitnessCache.put(childKey[i], children.fitness[i]);
+                }
+            } else if (childSource[i] >= 0) {
+                // Same lights, but the child keeps its own step sizes
+                children.fitness[i] = children.fitness[childSource[i]];
+                if (children.hasLightGrids()) {
+                    children.copyLightGrid(children, childSource[i], i);
+                }
+            }
+            childKey[i] = null;
+        }
     }
     
     /**
-     * mutate
-     * @param individual light array representing a solution
-     * @return Returns the modified solution. Uses method from page 76.
-     * Uncorrelated mutation with n step sizes.
-     * 
-     * Will not return until the hard-coded parameter bound requirements have
-     * been met (see code).
-     * 
-     * NOTE: This is a template from the previous project. It will need to be
-     * modified to work with Light objects. Might use a separate class for the
-     * Lights.
-     * 
-     * It should pick the values, then create the light last, assigning the 
-     * created values to the light object.
-     * 
-     * Because this method deals in primarily double values, when it creates the
-     * light it converts (rounding) to integer and boolean values. This is an
-     * approximation that may need to be adjusted.
+     * evaluateChildren
+     * Description: Scores the children in [from, to) and stores their 
+     * fitness with them. Each child only writes its own slot, so disjoint 
+     * ranges can be scored at the same time. Children the cache already 
+     * knows are skipped, and so are children that were not shortlisted by 
+     * screening (see screenChildren). With pruning, children that can not
+     * reach the threshold of this thread get -Double.MAX_VALUE and are 
+     * marked in pruned.
      */
-    private light[] mutate(light[] solution)
+    private void evaluateChildren(int from, int to, boolean screening)
     {
-        double ithNormal;
-        light[] resultSolution = new light[nNumber];
-        light individualLight;
-        double[] oldIndividual = new double[4], newIndividual = new double[4];
-        double oldStepSize;
+        PruningThreshold threshold = null;
+        if (!screening && isPruningActive()) {
+            threshold = pruningThreshold.get();
+            threshold.startRound(pruningRound);
+        }
+        double fitness;
+        for (int i = from; i < to; i++) {
+            if (fitnessCache != null && childSource[i] != SCORED_CHILD) {
+                if (threshold != null && childSource[i] == CACHED_CHILD) {
+                    threshold.offer(children.fitness[i]);
+                }
+                continue;
+            }
+            if (screening) {
+                children.fitness[i] = surrogateScreening 
+                        ? getSurrogateFitness(children, i)
+                        : getScreeningFitness(children, i);
+                continue;
+            }
+            if (shortlistOnly && !shortlisted[i]) {
+                continue;
+            }
+            if (threshold == null) {
+                // (invalid NaN values are replaced during the selection)
+                children.fitness[i] = children.hasLightGrids() 
+                        ? getIncrementalFitness(i) : getFitness(children, i);
+                continue;
+            }
+            fitness = children.hasLightGrids() 
+                    ? getIncrementalFitness(i, threshold.get()) 
+                    : getFitness(children, i, threshold.get());
+            if (fitness == PRUNED) {
+                pruned[i] = true;
+                children.fitness[i] = -Double.MAX_VALUE;
+                if (children.hasLightGrids()) {
+                    children.incrementalCount[i] = -1; // no sensor grid
+                }
+            } else {
+                children.fitness[i] = fitness;
+                threshold.offer(fitness);
+            }
+        }
+    }
+    
+    /**
+     * EvaluationTask
+     * Description: Fork-join task that splits the children array into ranges
+     * of at most grainSize children and scores each range on the pool.
+     */
+    private static final class EvaluationTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final transient LightPos_API api;
+        private final int from;
+        private final int to;
+        private final int grainSize;
+        private final boolean screening;
         
-        // Hard-coded parameter bounds (inclusive)
-        // first: x position (inches)
-        // second: y position (inches)
-        // third: intesity option (there are 5 choices)
-        double[] minVal = {0, 0, 0, 0};
-        double[] maxVal = {roomWidth, roomLength, 4, 1};
+        EvaluationTask(LightPos_API api, int from, int to, int grainSize, 
+                boolean screening) {
+            this.api = api;
+            this.from = from;
+            this.to = to;
+            this.grainSize = grainSize;
+            this.screening = screening;
+        }
         
-        for (int a = 0; a< solution.length; a++) {
-            individualLight = solution[a];
-            oldIndividual[0] = individualLight.getPos_x();
-            oldIndividual[1] = individualLight.getPos_y();
-            oldIndividual[2] = individualLight.getIntensityOp();
-            oldIndividual[3] = individualLight.isOn() ? 1 : 0 ;
-
-            // mutate position parameters
-            for (int i = 0; i < pNumber; i++) {
-                // Force it to repeat until the mutation is within bounds
-                oldStepSize = mutationStepSize[i];
-                do {
-                    // Make sure to return to original if it needs to retry the step
-                    mutationStepSize[i] = oldStepSize;
-                    // Get the ith value from a normal distribution
-                    ithNormal = generatorRandom.nextGaussian();
-
-                    // Mutate the step size
-                    mutationStepSize[i] = mutationStepSize[i] * (Math.pow( 
-                            Math.E, (overallLearningRate * 
-                                    generatorRandom.nextGaussian())
-                                    + (coordinateLearningRate * ithNormal)));
-
-                    // Mutate the individual using modified step size
-                    newIndividual[i] = oldIndividual[i] + 
-                            (mutationStepSize[i] * ithNormal);
-                } while (!(minVal[i] <= newIndividual[i] 
-                        && newIndividual[i] <= maxVal[i]));
+        @Override
+        protected void compute() {
+            if (to - from <= grainSize) {
+                api.evaluateChildren(from, to, screening);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new EvaluationTask(api, from, mid, grainSize, 
+                        screening),
+                        new EvaluationTask(api, mid, to, grainSize, 
+                                screening));
             }
-
-            light resultLight = new light(
-                    (int) Math.round(newIndividual[0]),
-                    (int) Math.round(newIndividual[1]),
-                    (int) Math.round(newIndividual[2]),
-                    (Math.round(newIndividual[3]) == 1.0));
-            
-            resultSolution[a] = resultLight;
         }
-        
-        return resultSolution;
+    }
+    
+    // Mutate one child with the self-adaptive ES (used by the benchmarks);
+    // only the default strategy mutates a single child
+    void mutate(int parent, int child)
+    {
+        if (!(strategy instanceof SelfAdaptiveStrategy)) {
+            throw new IllegalStateException("mutate needs the " 
+                    + Strategy.SELF_ADAPTIVE_ES + " strategy, not " 
+                    + strategyType);
+        }
+        ((SelfAdaptiveStrategy) strategy).mutate(parents, parent, children, 
+                child, generatorRandom);
     }
     
     /**
      * getFittestIndex
-     * @param individuals Double array representing an array of sets of values
-     * @return Returns the index of the fittest solution in the given array.
+     * @param solutions Population of solutions
+     * @return Returns the index of the fittest solution in the population,
+     * using the fitness stored with every individual.
      */
-    private int getFittestIndex(light [][] solutions)
+    private int getFittestIndex(Population solutions)
     {
         int fittestIndex = 0;
         double bestFitnes = -Double.MAX_VALUE;
         double currentFitness;
-        for (int i = 0; i < solutions.length; i++) {
-            currentFitness = getFitness(solutions[i]);
+        for (int i = 0; i < solutions.size(); i++) {
+            currentFitness = solutions.fitness[i];
             if ( Double.compare(currentFitness, bestFitnes) > 0)
             {
                 fittestIndex = i;
@@ -336,231 +948,1736 @@ public class LightPos_API {
      *              
      */
     public double getFitness(light[] solution)
+    {
+        Population single = new Population(1, solution.length);
+        single.setLights(0, solution);
+        return getFitness(single, 0);
+    }
+    
+    // Fitness of one individual of a population (see above)
+    double getFitness(Population solutions, int individual)
     {
         // If no lights are on, it is not a valid solution
-        if (getOnLights(solution)==0) {
+        if (getOnLights(solutions, individual)==0) {
             return -Double.MAX_VALUE;
         }
         // Only do these calculations if there are lights on
-        return (getFitnessHelper(getLightGrid(solution)) - getOnLights(solution) 
-                - getSolutionWatts(solution));
+        double[] lightGrid = lightGridBuffer.get();
+        getLightGrid(solutions, individual, lightGrid, 0);
+        return (getFitnessHelper(lightGrid, 0) 
+                - getOnLights(solutions, individual) 
+                - getSolutionWatts(solutions, individual));
     }
     
-    private int getOnLights(light[] solution)
+    // getFitness that gives up (returns PRUNED) as soon as the fitness is 
+    // sure to be below threshold: before the sensor grid is built if the 
+    // bound on the overall intensity is too low already, else while the 
+    // variation is summed (see getVariationLimit). Fitness values that are
+    // returned are the same as the ones of getFitness.
+    private double getFitness(Population solutions, int individual, 
+            double threshold)
     {
-        int lightsOnCount = 0;
-        for (int i = 0; i < solution.length; i++) {
-            if (solution[i].isOn()) {
-                lightsOnCount++;
-            }
+        if (getOnLights(solutions, individual)==0) {
+            return -Double.MAX_VALUE;
         }
-        return lightsOnCount;
+        double variationLimit = getVariationLimit(solutions, individual, 
+                threshold);
+        if (variationLimit < 0) {
+            return PRUNED;
+        }
+        double[] lightGrid = lightGridBuffer.get();
+        getLightGrid(solutions, individual, lightGrid, 0);
+        double fitness = getFitnessHelper(lightGrid, 0, gridRows, 
+                gridColumns, 1, 1, sensorWeight, variationLimit);
+        if (fitness == PRUNED) {
+            return PRUNED;
+        }
+        return (fitness 
+                - getOnLights(solutions, individual) 
+                - getSolutionWatts(solutions, individual));
     }
     
-    // This is the first step, setting up the light grid and getting the light
-    // intensity in candellas for each "sensor" point on the grid and returning
-    // a 2D array of double values.
-    private double[][] getLightGrid(light[] solution)
+    // Largest sum of the variation terms (half the overall variation, see
+    // getFitnessHelper) with which an individual could still reach 
+    // threshold, given that its overall intensity is at most 
+    // getIntensityBound. Negative when no variation at all is low enough, 
+    // Double.POSITIVE_INFINITY without a threshold (-Double.MAX_VALUE).
+    private double getVariationLimit(Population solutions, int individual,
+            double threshold)
     {
-        // divide the room up into a grid or 1 foot between each grid point
-        int gridRows = (int) Math.floor(roomWidth / 12);
-        int gridColumns = (int) Math.floor(roomLength / 12);
-        // The offset from the origin to center the grid in the room in inches
-        int originRowOffset = (roomWidth % 12) / 2; 
-        int originColumnOffset = (roomLength % 12) / 2; 
-        double[][] lightGrid = new double[gridRows][gridColumns];
-        // Logic for getting the light intensity at every point
-        // This is based on the following Excel file: 
-        //      "LightCollectorAlgorithms.xlsx"
-        double dist;
-        int x1;
-        int y1;
-        int x2;
-        int y2;
-        
-        for (int i = 0; i < gridRows; i++) {
-            for (int j = 0; j < gridColumns; j++) {
-                // lightGrid[i][j] = 0.0;
-                // For the current cell of the grid
-                for (int k = 0; k < solution.length; k++) {
-                    // Get the distance from each light to myself
-                    x1 = solution[k].getPos_x();
-                    y1 = solution[k].getPos_y();
-                    x2 = originRowOffset + (i * 12);
-                    y2 = originColumnOffset + (j * 12);
-                    dist = Math.sqrt(Math.pow(x2-x1,2)+Math.pow(y2-y1,2));
-                    // This distance is the max horizontal distance of light
-                    // given a 110 degree angle spread of the light from a 
-                    // nine-foot ceiling to the floor.
-                    if (dist <= 154.24)
-                    {
-                        if (dist >= 1.0)
-                        {
-                            //Add the light intensity, if it's close enough
-                            lightGrid[i][j] += (1/dist)*solution[k].getIntensity();
-                        }
-                        else
-                        {
-                            //If it's too close, just add the intensity
-                            lightGrid[i][j] += solution[k].getIntensity();
-                        }
-                    }
-                }
-            }
+        if (threshold == -Double.MAX_VALUE) {
+            return Double.POSITIVE_INFINITY;
         }
-        return lightGrid;
+        double intensity = getIntensityBound(solutions, individual);
+        double penalty = getOnLights(solutions, individual) 
+                + getSolutionWatts(solutions, individual);
+        double slack = PRUNING_TOLERANCE 
+                * (intensity + penalty + Math.abs(threshold));
+        return (intensity - penalty - threshold + slack) / 2;
     }
     
-    // This is step 2 in getting the fitness. It takes a 2D array of doubles and
-    // calculates the different between one sensor and all adjacent sensors, it
-    // then gets the total brightness. The difference of these two is the return
-    // value:
-    //      returnFitness = overall brightness - overall light variation
-    private double getFitnessHelper(double[][] lightGrid)
+    // Upper bound of the overall intensity of an individual (the sum of its
+    // sensor grid): every light adds its intensity times the sum of its 
+    // profile over the sensors it reaches, looked up in latticeSum. Walls 
+    // and occluders only take light away, so they are left out.
+    private double getIntensityBound(Population solutions, int individual)
     {
-        double overallLightIntensity = 0.0;
-        double overallLightVariation = 0.0;
-        
-        // This is based on the following Excel file: 
-        //      "FitnessCalculator.xlsx"
-        int rows = lightGrid.length;
-        int cols = lightGrid[0].length;
-        
-        // Get the overall light by adding all the sensor inputs together
-        // Inner points, then outer point
-        for (int i = 1; i < rows-1; i++) {
-            for (int j = 1; j < cols-1; j++) {
-                overallLightIntensity += lightGrid[i][j];
-                overallLightVariation += 
-                        Math.abs(lightGrid[i][j] - lightGrid[i-1][j-1]) + 
-                        Math.abs(lightGrid[i][j] - lightGrid[i-1][j]) + 
-                        Math.abs(lightGrid[i][j] - lightGrid[i-1][j+1]) + 
-                        Math.abs(lightGrid[i][j] - lightGrid[i][j+1]) + 
-                        Math.abs(lightGrid[i][j] - lightGrid[i+1][j+1]) + 
-                        Math.abs(lightGrid[i][j] - lightGrid[i+1][j]) + 
-                        Math.abs(lightGrid[i][j] - lightGrid[i+1][j-1]) + 
-                        Math.abs(lightGrid[i][j] - lightGrid[i][j-1]);
-            }
-        }
-        // First column, minus the corners
-        for (int i = 1; i < rows-1; i++) {
-            overallLightIntensity += lightGrid[i][0];
-            overallLightVariation += 
-                    Math.abs(lightGrid[i][0] - lightGrid[i-1][0]) + 
-                    Math.abs(lightGrid[i][0] - lightGrid[i-1][1]) + 
-                    Math.abs(lightGrid[i][0] - lightGrid[i][1]) + 
-                    Math.abs(lightGrid[i][0] - lightGrid[i+1][1]) + 
-                    Math.abs(lightGrid[i][0] - lightGrid[i+1][0]);
-        }
-        // Last column, minus the corners
-        for (int i = 1; i < rows-1; i++) {
-            overallLightIntensity += lightGrid[i][cols-1];
-            overallLightVariation += 
-                    Math.abs(lightGrid[i][cols-1] - lightGrid[i-1][cols-1]) + 
-                    Math.abs(lightGrid[i][cols-1] - lightGrid[i-1][cols-2]) + 
-                    Math.abs(lightGrid[i][cols-1] - lightGrid[i][cols-2]) + 
-                    Math.abs(lightGrid[i][cols-1] - lightGrid[i+1][cols-2]) + 
-                    Math.abs(lightGrid[i][cols-1] - lightGrid[i+1][cols-1]);
-        }
-        // First row, minus the corners
-        for (int j = 1; j < cols-1; j++) {
-            overallLightIntensity += lightGrid[0][j];
-            overallLightVariation += 
-                    Math.abs(lightGrid[0][j] - lightGrid[0][j-1]) + 
-                    Math.abs(lightGrid[0][j] - lightGrid[1][j-1]) + 
-                    Math.abs(lightGrid[0][j] - lightGrid[1][j]) + 
-                    Math.abs(lightGrid[0][j] - lightGrid[1][j+1]) + 
-                    Math.abs(lightGrid[0][j] - lightGrid[0][j+1]);
-        }
-        // Last row, minus the corners
-        for (int j = 1; j < cols-1; j++) {
-            overallLightIntensity += lightGrid[rows-1][j];
-            overallLightVariation += 
-                    Math.abs(lightGrid[rows-1][j] - lightGrid[rows-1][j-1]) + 
-                    Math.abs(lightGrid[rows-1][j] - lightGrid[rows-2][j-1]) + 
-                    Math.abs(lightGrid[rows-1][j] - lightGrid[rows-2][j]) + 
-                    Math.abs(lightGrid[rows-1][j] - lightGrid[rows-2][j+1]) + 
-                    Math.abs(lightGrid[rows-1][j] - lightGrid[rows-1][j+1]);
+        double bound = 0;
+        for (int k = 0; k < solutions.nNumber; k++) {
+            int op = solutions.getIntensityOp(individual, k);
+            bound += catalogue.getIntensity(op) * (getLatticeSum(op, 
+                    solutions.getPos_x(individual, k), 
+                    solutions.getPos_y(individual, k)) 
+                    + latticeSumMargin[op]);
         }
-        
-        //top left corner
-        overallLightIntensity += lightGrid[0][0];
-        overallLightVariation += 
-                    Math.abs(lightGrid[0][0] - lightGrid[0][1]) + 
-                    Math.abs(lightGrid[0][0] - lightGrid[1][1]) + 
-                    Math.abs(lightGrid[0][0] - lightGrid[1][0]);
-        
-        //top right corner
-        overallLightIntensity += lightGrid[0][cols-1];
-        overallLightVariation += 
-                    Math.abs(lightGrid[0][cols-1] - lightGrid[0][cols-2]) + 
-                    Math.abs(lightGrid[0][cols-1] - lightGrid[1][cols-2]) + 
-                    Math.abs(lightGrid[0][cols-1] - lightGrid[1][cols-1]);
-        
-        //bottom right corner
-        overallLightIntensity += lightGrid[rows-1][cols-1];
-        overallLightVariation += 
-                    Math.abs(lightGrid[rows-1][cols-1] - lightGrid[rows-2][cols-1]) + 
-                    Math.abs(lightGrid[rows-1][cols-1] - lightGrid[rows-2][cols-2]) + 
-                    Math.abs(lightGrid[rows-1][cols-1] - lightGrid[rows-1][cols-2]);
-        
-        //bottom lwft corner
-        overallLightIntensity += lightGrid[rows-1][0];
-        overallLightVariation += 
-                    Math.abs(lightGrid[rows-1][0] - lightGrid[rows-2][0]) + 
-                    Math.abs(lightGrid[rows-1][0] - lightGrid[rows-2][1]) + 
-                    Math.abs(lightGrid[rows-1][0] - lightGrid[rows-1][1]);
-        
-        return overallLightIntensity - overallLightVariation;
+        return bound;
     }
     
-    private int getSolutionWatts(light[] solution)
+    // Sum of the profile of fixture op over the sensors that a light at 
+    // (pos_x, pos_y) reaches. The sensor rows at or before the light are 
+    // rowPhase, rowPhase + 12, ... inches away from it and the ones after it
+    // 12 - rowPhase, 24 - rowPhase, ..., and the same for the columns, so 
+    // the sum is made of four rectangles of latticeSum.
+    private double getLatticeSum(int op, int pos_x, int pos_y)
     {
-        int totalWatts = 0;
-        for (int i = 0; i < nNumber; i++) {
-            if (solution[i].isOn()) {
-                totalWatts += solution[i].getWatts();
-            }
+        int firstRow = getFirstGridRow(pos_x, profileRows[op]);
+        int lastRow = getLastGridRow(pos_x, profileRows[op]);
+        int firstColumn = getFirstGridColumn(pos_y, profileColumns[op]);
+        int lastColumn = getLastGridColumn(pos_y, profileColumns[op]);
+        if (firstRow > lastRow || firstColumn > lastColumn) {
+            return 0;
         }
-        return totalWatts;
+        // Last sensor row/column at or before the light
+        int nearRow = Math.floorDiv(pos_x - originRowOffset, 12);
+        int nearColumn = Math.floorDiv(pos_y - originColumnOffset, 12);
+        int rowPhase = pos_x - originRowOffset - 12 * nearRow;
+        int columnPhase = pos_y - originColumnOffset - 12 * nearColumn;
+        // Lattice steps [from, to) away from the light on either side
+        int beforeRowFrom = Math.max(0, nearRow - lastRow);
+        int beforeRowTo = Math.max(beforeRowFrom, nearRow - firstRow + 1);
+        int afterRowFrom = Math.max(0, firstRow - nearRow - 1);
+        int afterRowTo = Math.max(afterRowFrom, lastRow - nearRow);
+        int beforeColumnFrom = Math.max(0, nearColumn - lastColumn);
+        int beforeColumnTo = Math.max(beforeColumnFrom, 
+                nearColumn - firstColumn + 1);
+        int afterColumnFrom = Math.max(0, firstColumn - nearColumn - 1);
+        int afterColumnTo = Math.max(afterColumnFrom, 
+                lastColumn - nearColumn);
+        return getLatticeRectangle(op, rowPhase, beforeRowFrom, beforeRowTo,
+                    columnPhase, beforeColumnFrom, beforeColumnTo)
+                + getLatticeRectangle(op, rowPhase, beforeRowFrom, 
+                    beforeRowTo, 12 - columnPhase, afterColumnFrom, 
+                    afterColumnTo)
+                + getLatticeRectangle(op, 12 - rowPhase, afterRowFrom, 
+                    afterRowTo, columnPhase, beforeColumnFrom, 
+                    beforeColumnTo)
+                + getLatticeRectangle(op, 12 - rowPhase, afterRowFrom, 
+                    afterRowTo, 12 - columnPhase, afterColumnFrom, 
+                    afterColumnTo);
     }
     
-    ////////////////////////////////////////////////////////////////////////////
-    ///////////////////////////////CONSTRUCTORS/////////////////////////////////
-    // Maximizer_API
-    public LightPos_API()
+    // Sum of the profile of fixture op over the offsets 
+    // (rowBase + 12 m, columnBase + 12 l) for m in [rowFrom, rowTo) and l 
+    // in [columnFrom, columnTo)
+    private double getLatticeRectangle(int op, int rowBase, int rowFrom, 
+            int rowTo, int columnBase, int columnFrom, int columnTo)
     {
-        nNumber = 8; //number of lights in each solution
-        parents = new light[10][nNumber];
-        children = new light[100][nNumber];
-        mutationInitialStepSize = 1;
-        roomWidth = 240;
-        roomLength = 120;
-        terminationCount = 10000;
-        overallLearningRate= 1.0 / Math.sqrt(2. * nNumber * 4);
-        coordinateLearningRate = 1.0 / Math.sqrt(2 * Math.sqrt(nNumber));
-        mutationStepSize = new double[pNumber];
-        for (int i = 0; i < pNumber; i++) {
-            mutationStepSize[i] = mutationInitialStepSize;
+        if (rowFrom == rowTo || columnFrom == columnTo) {
+            return 0;
         }
+        double[] sums = latticeSum[op];
+        int length = latticeColumns[op];
+        int start = (rowBase * 13 + columnBase) * latticeRows[op] * length;
+        return sums[start + rowTo * length + columnTo]
+                - sums[start + rowFrom * length + columnTo]
+                - sums[start + rowTo * length + columnFrom]
+                + sums[start + rowFrom * length + columnFrom];
     }
     
-    // Full Constructor
-    public LightPos_API(int numParents, int numChildren, int n, int width,
-            int height, double mutationStSz, int terminationNumber)
+    // Fitness of one individual estimated by the surrogate (see setSurrogate)
+    private double getSurrogateFitness(Population solutions, int individual)
     {
-        nNumber = n; // There are n max lights in this solution
-        parents = new light[numParents][nNumber];
-        children = new light[numChildren][nNumber];
-        mutationInitialStepSize = mutationStSz;
-        terminationCount = terminationNumber;
-        roomWidth = width;
-        roomLength = height;
-        overallLearningRate= 1.0 / Math.sqrt(2. * nNumber * 4);
-        coordinateLearningRate = 1.0 / Math.sqrt(2 * Math.sqrt(nNumber));
-        mutationStepSize = new double[pNumber];
-        for (int i = 0; i < pNumber; i++) {
-            mutationStepSize[i] = mutationInitialStepSize;
+        if (getOnLights(solutions, individual)==0) {
+            return -Double.MAX_VALUE;
+        }
+        return surrogate.predict(solutions, individual);
+    }
+    
+    // Rough fitness of one individual on the screening grid, scaled to the
+    // full grid (see setScreening)
+    private double getScreeningFitness(Population solutions, int individual)
+    {
+        if (getOnLights(solutions, individual)==0) {
+            return -Double.MAX_VALUE;
+        }
+        double[] lightGrid = lightGridBuffer.get();
+        getLightGrid(solutions, individual, lightGrid, 0, screeningStride);
+        return (getFitnessHelper(lightGrid, 0, screeningRows, 
+                screeningColumns, screeningIntensityScale, 
+                screeningVariationScale, screeningWeight, 
+                Double.POSITIVE_INFINITY)
+                - getOnLights(solutions, individual) 
+                - getSolutionWatts(solutions, individual));
+    }
+    
+    /**
+     * getIncrementalFitness
+     * @param child index of a child created by generateOffspring
+     * @return Returns the fitness of the child (same as getFitness, up to
+     * rounding) when the populations keep their sensor grids.
+     * 
+     * The child starts from the sensor grid of the parent it was copied from.
+     * Every light that moved or changed intensity is then subtracted from the
+     * grid at its old spot and added back at its new one, and the overall
+     * intensity and variation are only updated over the cells that light
+     * reaches (plus one cell around them for the variation). A full grid is 
+     * built instead when the changed lights reach most of the room, or after
+     * INCREMENTAL_REFRESH incremental updates in a row so rounding errors 
+     * don't add up.
+     */
+    private double getIncrementalFitness(int child)
+    {
+        return getIncrementalFitness(child, -Double.MAX_VALUE);
+    }
+    
+    // Same as above, but a child whose intensity bound can not reach 
+    // threshold is given up (PRUNED) before its sensor grid is touched
+    private double getIncrementalFitness(int child, double threshold)
+    {
+        if (getVariationLimit(children, child, threshold) < 0) {
+            return PRUNED;
+        }
+        int parent = childParent[child];
+        int changedCells = 0;
+        
+        for (int k = 0; k < nNumber; k++) {
+            if (isLightGridChanged(parent, child, k)) {
+                int rows = Math.max(
+                        profileRows[parents.getIntensityOp(parent, k)],
+                        profileRows[children.getIntensityOp(child, k)]);
+                int columns = Math.max(
+                        profileColumns[parents.getIntensityOp(parent, k)],
+                        profileColumns[children.getIntensityOp(child, k)]);
+                changedCells += (getLastGridRow(Math.max(
+                        parents.getPos_x(parent, k), 
+                        children.getPos_x(child, k)), rows) 
+                        - getFirstGridRow(Math.min(
+                        parents.getPos_x(parent, k), 
+                        children.getPos_x(child, k)), rows) + 3)
+                        * (getLastGridColumn(Math.max(
+                        parents.getPos_y(parent, k), 
+                        children.getPos_y(child, k)), columns) 
+                        - getFirstGridColumn(Math.min(
+                        parents.getPos_y(parent, k), 
+                        children.getPos_y(child, k)), columns) + 3);
+            }
+        }
+        
+        // An incremental update visits each affected cell about 
+        // INCREMENTAL_CELL_COST times, a full grid visits every cell once per
+        // light and once more per neighbour for the variation
+        if (parents.incrementalCount[parent] >= INCREMENTAL_REFRESH
+                || changedCells * INCREMENTAL_CELL_COST 
+                    > children.gridCells * (nNumber + 9)) {
+            refreshLightGrid(children, child);
+        } else {
+            children.copyLightGrid(parents, parent, child);
+            for (int k = 0; k < nNumber; k++) {
+                if (isLightGridChanged(parent, child, k)) {
+                    moveLightInGrid(child, parents.getPos_x(parent, k), 
+                            parents.getPos_y(parent, k),
+                            parents.getIntensityOp(parent, k),
+                            children.getPos_x(child, k), 
+                            children.getPos_y(child, k),
+                            children.getIntensityOp(child, k));
+                }
+            }
+            if (changedCells > 0) {
+                children.incrementalCount[child]++;
+            }
+        }
+        
+        // If no lights are on, it is not a valid solution
+        if (getOnLights(children, child)==0) {
+            return -Double.MAX_VALUE;
+        }
+        return (children.overallIntensity[child] 
+                - children.overallVariation[child]
+                - getOnLights(children, child) 
+                - getSolutionWatts(children, child));
+    }
+    
+    // Move one light in the stored sensor grid of a child from its old spot
+    // and intensity option to the new ones, and update the child's overall 
+    // intensity and variation by the change over the affected cells only.
+    private void moveLightInGrid(int child, int oldPos_x, int oldPos_y, 
+            int oldIntensityOp, int newPos_x, int newPos_y, int newIntensityOp)
+    {
+        double[] lightGrid = children.lightGrid;
+        int offset = child * children.gridCells;
+        // Sensors reached by the light before or after the move
+        int rows = Math.max(profileRows[oldIntensityOp], 
+                profileRows[newIntensityOp]);
+        int columns = Math.max(profileColumns[oldIntensityOp], 
+                profileColumns[newIntensityOp]);
+        int firstRow = getFirstGridRow(Math.min(oldPos_x, newPos_x), rows);
+        int lastRow = getLastGridRow(Math.max(oldPos_x, newPos_x), rows);
+        int firstColumn = getFirstGridColumn(Math.min(oldPos_y, newPos_y), 
+                columns);
+        int lastColumn = getLastGridColumn(Math.max(oldPos_y, newPos_y), 
+                columns);
+        // Variation terms change for every pair that touches a changed cell,
+        // so they are summed over one more cell on every side
+        int varFirstRow = Math.max(0, firstRow - 1);
+        int varLastRow = Math.min(gridRows - 1, lastRow + 1);
+        int varFirstColumn = Math.max(0, firstColumn - 1);
+        int varLastColumn = Math.min(gridColumns - 1, lastColumn + 1);
+        
+        double oldIntensity = getRegionIntensity(lightGrid, offset, 
+                firstRow, lastRow, firstColumn, lastColumn);
+        double oldVariation = getRegionVariation(lightGrid, offset, 
+                varFirstRow, varLastRow, varFirstColumn, varLastColumn);
+        addLightToGrid(lightGrid, offset, oldPos_x, oldPos_y, oldIntensityOp,
+                -1);
+        addLightToGrid(lightGrid, offset, newPos_x, newPos_y, newIntensityOp,
+                1);
+        children.overallIntensity[child] += getRegionIntensity(lightGrid, 
+                offset, firstRow, lastRow, firstColumn, lastColumn) 
+                - oldIntensity;
+        children.overallVariation[child] += getRegionVariation(lightGrid, 
+                offset, varFirstRow, varLastRow, varFirstColumn, varLastColumn)
+                - oldVariation;
+    }
+    
+    // Whether light k of the child lights the sensors differently than the 
+    // same light of its parent (on/off does not change the sensor grid)
+    private boolean isLightGridChanged(int parent, int child, int k)
+    {
+        return parents.getPos_x(parent, k) != children.getPos_x(child, k)
+                || parents.getPos_y(parent, k) != children.getPos_y(child, k)
+                || parents.getIntensityOp(parent, k) 
+                    != children.getIntensityOp(child, k);
+    }
+    
+    // Build the stored sensor grid of an individual from scratch along with
+    // its overall intensity and variation
+    private void refreshLightGrid(Population solutions, int individual)
+    {
+        int offset = individual * solutions.gridCells;
+        getLightGrid(solutions, individual, solutions.lightGrid, offset);
+        solutions.overallIntensity[individual] = getRegionIntensity(
+                solutions.lightGrid, offset, 0, gridRows-1, 0, gridColumns-1);
+        solutions.overallVariation[individual] = getRegionVariation(
+                solutions.lightGrid, offset, 0, gridRows-1, 0, gridColumns-1);
+        solutions.incrementalCount[individual] = 0;
+    }
+    
+    private int getOnLights(Population solutions, int individual)
+    {
+        int lightsOnCount = 0;
+        for (int i = 0; i < solutions.nNumber; i++) {
+            if (solutions.isOn(individual, i)) {
+                lightsOnCount++;
+            }
+        }
+        return lightsOnCount;
+    }
+    
+    // This is the first step, setting up the light grid and getting the light
+    // intensity in candellas for each "sensor" point on the grid and returning
+    // them in lightGrid (gridRows x gridColumns values, row-major, starting at
+    // offset).
+    void getLightGrid(Population solutions, int individual, 
+            double[] lightGrid, int offset)
+    {
+        getLightGrid(solutions, individual, lightGrid, offset, 1);
+    }
+    
+    // Same as above for every stride-th sensor row and column only (a 
+    // ceil(gridRows/stride) x ceil(gridColumns/stride) grid)
+    private void getLightGrid(Population solutions, int individual, 
+            double[] lightGrid, int offset, int stride)
+    {
+        // Logic for getting the light intensity at every point
+        // This is based on the following Excel file: 
+        //      "LightCollectorAlgorithms.xlsx"
+        // Instead of visiting every light from every sensor, every light is
+        // added to the sensors within its reach only (see addLightToGrid), 
+        // so a large room costs lights x nearby sensors instead of lights x
+        // all sensors. The lights are added in order, so every sensor still
+        // sums the same values in the same order.
+        int rows = (gridRows + stride - 1) / stride;
+        int cols = (gridColumns + stride - 1) / stride;
+        Arrays.fill(lightGrid, offset, offset + rows*cols, 0.0);
+        for (int k = 0; k < solutions.nNumber; k++) {
+            addLightToGrid(lightGrid, offset, 
+                    solutions.getPos_x(individual, k),
+                    solutions.getPos_y(individual, k),
+                    solutions.getIntensityOp(individual, k), 1, stride);
+        }
+    }
+    
+    // Add (sign = 1) or remove (sign = -1) the light of one light to the 
+    // sensors it reaches in a sensor grid stored like in getLightGrid
+    private void addLightToGrid(double[] lightGrid, int offset, int pos_x, 
+            int pos_y, int intensityOp, int sign)
+    {
+        addLightToGrid(lightGrid, offset, pos_x, pos_y, intensityOp, sign, 1);
+    }
+    
+    // Same as above for a grid of every stride-th sensor row and column. The
+    // distance falloff is looked up in the profile of the fixture (see 
+    // buildProfile) instead of being computed for every pair.
+    private void addLightToGrid(double[] lightGrid, int offset, int pos_x, 
+            int pos_y, int intensityOp, int sign, int stride)
+    {
+        double intensity = sign * catalogue.getIntensity(intensityOp);
+        double[] profile = fixtureProfile[intensityOp];
+        int rows = profileRows[intensityOp];
+        int columns = profileColumns[intensityOp];
+        int cols = (gridColumns + stride - 1) / stride;
+        // Sensors of the (strided) grid within the reach of the light
+        int firstRow = Math.floorDiv(getFirstGridRow(pos_x, rows) + stride - 1,
+                stride);
+        int lastRow = Math.floorDiv(getLastGridRow(pos_x, rows), stride);
+        int firstColumn = Math.floorDiv(
+                getFirstGridColumn(pos_y, columns) + stride - 1, stride);
+        int lastColumn = Math.floorDiv(getLastGridColumn(pos_y, columns), 
+                stride);
+        int dx;
+        int dy;
+        
+        if (visibility != null) {
+            addVisibleLightToGrid(lightGrid, offset, pos_x, pos_y, intensity,
+                    profile, columns, stride, firstRow, lastRow, firstColumn,
+                    lastColumn);
+            return;
+        }
+        for (int i = firstRow; i <= lastRow; i++) {
+            dx = Math.abs(originRowOffset + (i * stride * 12) - pos_x);
+            for (int j = firstColumn; j <= lastColumn; j++) {
+                dy = Math.abs(originColumnOffset + (j * stride * 12) - pos_y);
+                lightGrid[offset + i*cols + j] += 
+                        profile[dx * columns + dy] * intensity;
+            }
+        }
+    }
+    
+    // addLightToGrid for rooms with a geometry: the light only reaches the
+    // sensors whose visibility bit is set (see buildVisibility), and lights
+    // outside the room reach none
+    private void addVisibleLightToGrid(double[] lightGrid, int offset, 
+            int pos_x, int pos_y, double intensity, double[] profile, 
+            int columns, int stride, int firstRow, int lastRow, 
+            int firstColumn, int lastColumn)
+    {
+        int position = pos_x * (roomLength + 1) + pos_y;
+        if ((blockedPositions[position >>> 6] & (1L << position)) != 0) {
+            return;
+        }
+        int cols = (gridColumns + stride - 1) / stride;
+        int cellX = pos_x / visibilityPitch;
+        int cellY = pos_y / visibilityPitch;
+        // Bit of the sensor in row 0 and column 0 of the grid (it may be 
+        // before the window, but only sensors in the window are tested)
+        int origin = (cellX * visibilityCellsY + cellY) * visibilityCellBits
+                - getFirstGridRow(cellX * visibilityPitch, maxProfileRows)
+                    * visibilityColumns
+                - getFirstGridColumn(cellY * visibilityPitch, 
+                        maxProfileColumns);
+        int dx;
+        int dy;
+        int bit;
+        
+        for (int i = firstRow; i <= lastRow; i++) {
+            dx = Math.abs(originRowOffset + (i * stride * 12) - pos_x);
+            for (int j = firstColumn; j <= lastColumn; j++) {
+                bit = origin + i * stride * visibilityColumns + j * stride;
+                if ((visibility[bit >>> 6] & (1L << bit)) != 0) {
+                    dy = Math.abs(originColumnOffset + (j * stride * 12) 
+                            - pos_y);
+                    lightGrid[offset + i*cols + j] += 
+                            profile[dx * columns + dy] * intensity;
+                }
+            }
+        }
+    }
+    
+    // First and last sensor row/column that a light at the given position can
+    // reach with a profile of the given size in that direction
+    private int getFirstGridRow(int pos_x, int rows)
+    {
+        return Math.max(0, -Math.floorDiv(
+                originRowOffset - pos_x + rows - 1, 12));
+    }
+    
+    private int getLastGridRow(int pos_x, int rows)
+    {
+        return Math.min(gridRows - 1, Math.floorDiv(
+                pos_x + rows - 1 - originRowOffset, 12));
+    }
+    
+    private int getFirstGridColumn(int pos_y, int columns)
+    {
+        return Math.max(0, -Math.floorDiv(
+                originColumnOffset - pos_y + columns - 1, 12));
+    }
+    
+    private int getLastGridColumn(int pos_y, int columns)
+    {
+        return Math.min(gridColumns - 1, Math.floorDiv(
+                pos_y + columns - 1 - originColumnOffset, 12));
+    }
+    
+    // Builds the falloff table of a fixture used by getLightGrid. Light 
+    // positions and sensor points are whole inches, so the falloff factor of
+    // a light only depends on the (dx, dy) offset to the sensor:
+    //      1/dist^falloff  if 1 <= dist <= reach
+    //      1               if dist < 1 (the light is right above the sensor)
+    //      0               otherwise
+    // The factor for offset (|dx|, |dy|) is stored at 
+    // |dx| * columns + |dy|; offsets beyond the table are out of range.
+    private static double[] buildProfile(FixtureCatalogue.Fixture fixture, 
+            int rows, int columns)
+    {
+        double[] profile = new double[rows * columns];
+        double reach = fixture.getReach();
+        double dist;
+        for (int dx = 0; dx < rows; dx++) {
+            for (int dy = 0; dy < columns; dy++) {
+                dist = Math.sqrt(Math.pow(dx,2)+Math.pow(dy,2));
+                // The reach is the max horizontal distance of light given
+                // the angle spread of the light from its mounting height to
+                // the floor.
+                if (dist <= reach)
+                {
+                    if (dist >= 1.0)
+                    {
+                        //Add the light intensity, if it's close enough
+                        profile[dx * columns + dy] = 
+                                1/Math.pow(dist, fixture.getFalloff());
+                    }
+                    else
+                    {
+                        //If it's too close, just add the intensity
+                        profile[dx * columns + dy] = 1;
+                    }
+                }
+            }
+        }
+        return profile;
+    }
+    
+    // Prefix sums of a profile over the sensor lattice: for every rowBase
+    // and columnBase in 0..12 (the offset of the nearest sensor from the 
+    // light), entry 
+    //      ((rowBase * 13 + columnBase) * latticeRows + a) * latticeColumns + c
+    // is the sum of the profile at the offsets (rowBase + 12 m, 
+    // columnBase + 12 l) for m < a and l < c. Offsets beyond the profile 
+    // count as 0.
+    private static double[] buildLatticeSum(double[] profile, int rows, 
+            int columns, int latticeRows, int latticeColumns)
+    {
+        double[] sums = new double[13 * 13 * latticeRows * latticeColumns];
+        for (int rowBase = 0; rowBase <= 12; rowBase++) {
+            for (int columnBase = 0; columnBase <= 12; columnBase++) {
+                int start = (rowBase * 13 + columnBase) * latticeRows 
+                        * latticeColumns;
+                for (int a = 1; a < latticeRows; a++) {
+                    int dx = rowBase + 12 * (a - 1);
+                    double rowSum = 0;
+                    for (int c = 1; c < latticeColumns; c++) {
+                        int dy = columnBase + 12 * (c - 1);
+                        if (dx < rows && dy < columns) {
+                            rowSum += profile[dx * columns + dy];
+                        }
+                        sums[start + a * latticeColumns + c] = 
+                                sums[start + (a - 1) * latticeColumns + c] 
+                                + rowSum;
+                    }
+                }
+            }
+        }
+        return sums;
+    }
+    
+    // Overall intensity of the sensors in rows firstRow..lastRow and columns
+    // firstColumn..lastColumn (inclusive) of a sensor grid
+    private double getRegionIntensity(double[] lightGrid, int offset, 
+            int firstRow, int lastRow, int firstColumn, int lastColumn)
+    {
+        double regionIntensity = 0.0;
+        for (int i = firstRow; i <= lastRow; i++) {
+            for (int j = firstColumn; j <= lastColumn; j++) {
+                regionIntensity += lightGrid[offset + i*gridColumns + j];
+            }
+        }
+        return regionIntensity;
+    }
+    
+    // Variation between every sensor in rows firstRow..lastRow and columns
+    // firstColumn..lastColumn (inclusive) and all of its adjacent sensors,
+    // counted the same way as getFitnessHelper does for the whole grid
+    // (including the sensor weights, see setRoomGeometry)
+    private double getRegionVariation(double[] lightGrid, int offset, 
+            int firstRow, int lastRow, int firstColumn, int lastColumn)
+    {
+        double regionVariation = 0.0;
+        double cell;
+        double cellWeight;
+        for (int i = firstRow; i <= lastRow; i++) {
+            for (int j = firstColumn; j <= lastColumn; j++) {
+                cell = lightGrid[offset + i*gridColumns + j];
+                cellWeight = sensorWeight == null ? 1 
+                        : sensorWeight[i*gridColumns + j];
+                for (int ni = Math.max(0, i-1); 
+                        ni <= Math.min(gridRows-1, i+1); ni++) {
+                    for (int nj = Math.max(0, j-1); 
+                            nj <= Math.min(gridColumns-1, j+1); nj++) {
+                        if (sensorWeight == null) {
+                            regionVariation += Math.abs(cell 
+                                    - lightGrid[offset + ni*gridColumns + nj]);
+                        } else {
+                            regionVariation += cellWeight 
+                                    * sensorWeight[ni*gridColumns + nj]
+                                    * Math.abs(cell 
+                                    - lightGrid[offset + ni*gridColumns + nj]);
+                        }
+                    }
+                }
+            }
+        }
+        return regionVariation;
+    }
+    
+    // This is step 2 in getting the fitness. It takes the sensor grid (stored
+    // row-major starting at offset) and calculates the different between one 
+    // sensor and all adjacent sensors, it then gets the total brightness. The
+    // difference of these two is the return value:
+    //      returnFitness = overall brightness - overall light variation
+    // 
+    // Every pair of adjacent sensors shows up twice in the overall variation
+    // (once from each side), so the grid is read as pairs instead: each row
+    // is compared with its right neighbour and with the row below it 
+    // (straight down and both diagonals), and the sum is doubled. This is one
+    // pass over the grid with no edge or corner cases, and every inner loop 
+    // walks two rows side by side with independent sums so the JIT can 
+    // unroll and vectorize it. The result matches the cell-by-cell sums of 
+    // "FitnessCalculator.xlsx" up to rounding.
+    double getFitnessHelper(double[] lightGrid, int offset)
+    {
+        return getFitnessHelper(lightGrid, offset, gridRows, gridColumns, 
+                1, 1, sensorWeight, Double.POSITIVE_INFINITY);
+    }
+    
+    // Same as above for a rows x cols grid, with the overall intensity and
+    // variation multiplied by the given scales (see setScreening) and only
+    // the pairs of sensors with weight 1 counted in the variation (weight
+    // null: all of them, see setRoomGeometry). Returns PRUNED as soon as 
+    // the variation terms summed so far exceed variationLimit (see 
+    // getVariationLimit), checked after every row.
+    private double getFitnessHelper(double[] lightGrid, int offset, 
+            int rows, int cols, double intensityScale, double variationScale,
+            double[] weight, double variationLimit)
+    {
+        if (weight != null) {
+            return getWeightedFitnessHelper(lightGrid, offset, rows, cols, 
+                    intensityScale, variationScale, weight, variationLimit);
+        }
+        double overallLightIntensity = 0.0;
+        double rowVariation = 0.0; // right neighbour
+        double columnVariation = 0.0; // neighbour below
+        double diagonalVariation = 0.0; // neighbours below left and right
+        int row;
+        int next;
+        
+        for (int i = 0; i < rows; i++) {
+            row = offset + i*cols;
+            next = row + cols;
+            for (int j = 0; j < cols-1; j++) {
+                overallLightIntensity += lightGrid[row+j];
+                rowVariation += Math.abs(lightGrid[row+j] - lightGrid[row+j+1]);
+            }
+            overallLightIntensity += lightGrid[row+cols-1];
+            if (i == rows-1) {
+                break;
+            }
+            for (int j = 0; j < cols-1; j++) {
+                columnVariation += 
+                        Math.abs(lightGrid[row+j] - lightGrid[next+j]);
+                diagonalVariation += 
+                        Math.abs(lightGrid[row+j] - lightGrid[next+j+1]) + 
+                        Math.abs(lightGrid[row+j+1] - lightGrid[next+j]);
+            }
+            columnVariation += 
+                    Math.abs(lightGrid[row+cols-1] - lightGrid[next+cols-1]);
+            if (rowVariation + columnVariation + diagonalVariation 
+                    > variationLimit) {
+                return PRUNED;
+            }
+        }
+        
+        return intensityScale * overallLightIntensity 
+                - variationScale * 2 * (rowVariation + columnVariation 
+                + diagonalVariation);
+    }
+    
+    // getFitnessHelper for rooms with sensors outside the room, which have
+    // weight 0: a pair of neighbours only adds to the variation when both
+    // are in the room. Sensors outside the room never get any light, so the
+    // overall intensity needs no weights.
+    private double getWeightedFitnessHelper(double[] lightGrid, int offset, 
+            int rows, int cols, double intensityScale, double variationScale,
+            double[] weight, double variationLimit)
+    {
+        double overallLightIntensity = 0.0;
+        double rowVariation = 0.0; // right neighbour
+        double columnVariation = 0.0; // neighbour below
+        double diagonalVariation = 0.0; // neighbours below left and right
+        int cell;
+        
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                cell = i*cols + j;
+                overallLightIntensity += lightGrid[offset+cell];
+                if (j < cols-1) {
+                    rowVariation += weight[cell] * weight[cell+1] 
+                            * Math.abs(lightGrid[offset+cell] 
+                            - lightGrid[offset+cell+1]);
+                }
+                if (i == rows-1) {
+                    continue;
+                }
+                columnVariation += weight[cell] * weight[cell+cols] 
+                        * Math.abs(lightGrid[offset+cell] 
+                        - lightGrid[offset+cell+cols]);
+                if (j < cols-1) {
+                    diagonalVariation += weight[cell] * weight[cell+cols+1] 
+                            * Math.abs(lightGrid[offset+cell] 
+                            - lightGrid[offset+cell+cols+1]);
+                    diagonalVariation += weight[cell+1] * weight[cell+cols] 
+                            * Math.abs(lightGrid[offset+cell+1] 
+                            - lightGrid[offset+cell+cols]);
+                }
+            }
+            if (rowVariation + columnVariation + diagonalVariation 
+                    > variationLimit) {
+                return PRUNED;
+            }
+        }
+        
+        return intensityScale * overallLightIntensity 
+                - variationScale * 2 * (rowVariation + columnVariation 
+                + diagonalVariation);
+    }
+    
+    private int getSolutionWatts(Population solutions, int individual)
+    {
+        return solutions.getWatts(individual, catalogue);
+    }
+    
+    /**
+     * setIncrementalEvaluation
+     * @param enabled Whether every parent and child keeps its own sensor grid
+     * so children are scored by only updating the lights that changed (see
+     * getIncrementalFitness). This needs gridRows * gridColumns doubles per
+     * individual. Call before getBestSolution.
+     */
+    public void setIncrementalEvaluation(boolean enabled)
+    {
+        if (enabled && !children.hasLightGrids()) {
+            parents.enableLightGrids(gridRows * gridColumns);
+            children.enableLightGrids(gridRows * gridColumns);
+            // Parents may already exist (e.g. after loadCheckpoint)
+            for (int p = 0; p < parents.size(); p++) {
+                refreshLightGrid(parents, p);
+            }
+        } else if (!enabled) {
+            parents.disableLightGrids();
+            children.disableLightGrids();
+        }
+    }
+    
+    /**
+     * getBestFitness
+     * @return Returns the fitness of the solution returned by the last call to
+     * getBestSolution, so it does not need to be scored again.
+     */
+    public double getBestFitness()
+    {
+        return bestFitness;
+    }
+    
+    /**
+     * getParetoFront
+     * @return Returns the parents of the last generation that no other 
+     * parent beats in both illumination quality and energy (see 
+     * ParetoSolution), by increasing watts, with duplicates left out. With
+     * Strategy.NSGA_II the parents spread out along this front, so a single
+     * run gives the whole trade-off between light and energy; the other 
+     * strategies only find the part of it around the best fitness.
+     */
+    public List<ParetoSolution> getParetoFront()
+    {
+        double[] quality = new double[parents.size()];
+        double[] energy = new double[parents.size()];
+        for (int p = 0; p < parents.size(); p++) {
+            int watts = getSolutionWatts(parents, p);
+            energy[p] = watts;
+            quality[p] = ParetoSort.getQuality(parents.fitness[p], watts);
+        }
+        ParetoSort paretoSort = new ParetoSort(parents.size());
+        paretoSort.sort(quality, energy, parents.size());
+        
+        List<ParetoSolution> front = new ArrayList<>();
+        for (int p = 0; p < parents.size(); p++) {
+            if (paretoSort.getRank(p) != 0 
+                    || quality[p] == -Double.MAX_VALUE) {
+                continue;
+            }
+            boolean duplicate = false;
+            for (ParetoSolution solution : front) {
+                duplicate |= solution.getQuality() == quality[p] 
+                        && solution.getWatts() == energy[p];
+            }
+            if (!duplicate) {
+                front.add(new ParetoSolution(parents.toLights(p, catalogue),
+                        quality[p], (int) energy[p]));
+            }
+        }
+        front.sort(Comparator.comparingInt(ParetoSolution::getWatts));
+        return front;
+    }
+    
+    /**
+     * setPopulationStorage
+     * @param storage Where the lights and step sizes of the parents and 
+     * children are kept (see Population): HEAP (the default), or DIRECT
+     * and MAPPED to keep them outside the Java heap as one fixed-size
+     * record per individual (see OffHeapGenomes), for very large mu and 
+     * lambda. Results are the same with every storage. Fitness values, the
+     * per-child selection buffers (24 bytes per child, more with the 
+     * cache, screening or pruning) and the sensor grids of incremental 
+     * evaluation stay on the heap. Moves the current populations (freeing
+     * the old storage); pass the storage to the constructor to avoid 
+     * allocating them on the heap first.
+     */
+    public void setPopulationStorage(Storage storage)
+    {
+        parents.setStorage(storage);
+        children.setStorage(storage);
+    }
+    
+    /**
+     * setFitnessCacheSize
+     * @param capacity Number of solutions whose fitness is remembered, the 
+     * least recently used ones are dropped first. Children identical to a 
+     * remembered solution (or to another child of the same generation) are 
+     * not scored again. 0 disables the cache (the default).
+     */
+    public void setFitnessCacheSize(int capacity)
+    {
+        fitnessCache = capacity > 0 ? new FitnessCache(capacity) : null;
+        if (fitnessCache != null && childSource == null) {
+            childSource = new int[children.size()];
+            childKey = new FitnessCache.Key[children.size()];
+        }
+    }
+    
+    // Number of children whose fitness was found in the cache (or that were
+    // identical to another child of the same generation)
+    public long getCacheHits()
+    {
+        return fitnessCache == null ? 0 : fitnessCache.getHits();
+    }
+    
+    // Number of children that were looked up but had to be scored
+    public long getCacheMisses()
+    {
+        return fitnessCache == null ? 0 : fitnessCache.getMisses();
+    }
+    
+    /**
+     * setSeed
+     * @param seed Seed of the random generator, so a run can be repeated
+     */
+    public void setSeed(long seed)
+    {
+        generatorRandom = RandomSource.create(seed);
+    }
+    
+    /**
+     * setRandomSource
+     * @param random Generator of every random number of the optimizer
+     * instead of the default SplitRandom (IslandModel gives every island
+     * one split from its own). Checkpoints only store the state of the
+     * default generator, so checkpointing an optimizer with another source
+     * throws an IllegalStateException.
+     */
+    public void setRandomSource(RandomSource random)
+    {
+        if (random == null) {
+            throw new IllegalArgumentException("No random source");
+        }
+        generatorRandom = random;
+    }
+    
+    /**
+     * setListener
+     * @param listener Receives the progress of the optimization (generation
+     * statistics, improvements and restarts), or null for none (the 
+     * default). See ConsoleListener and JfrListener.
+     */
+    public void setListener(OptimizationListener listener)
+    {
+        this.listener = listener != null ? listener 
+                : OptimizationListener.NONE;
+    }
+    
+    // Number of solutions scored since getBestSolution (or startRun) began
+    public long getEvaluationCount()
+    {
+        return evaluationCount;
+    }
+    
+    /**
+     * setStrategy
+     * @param strategyType Algorithm that creates the children of every 
+     * generation: the self-adaptive ES (the default), CMA-ES or the 
+     * multi-objective NSGA-II (see getParetoFront), see 
+     * SelfAdaptiveStrategy, CmaEsStrategy and Nsga2Strategy. Call before 
+     * getBestSolution.
+     */
+    public void setStrategy(Strategy strategyType)
+    {
+        this.strategyType = strategyType;
+        if (strategy != null) {
+            strategy.close();
+        }
+        if (strategyType == Strategy.NSGA_II) {
+            strategy = new Nsga2Strategy(parents, children, nNumber, 
+                    roomWidth, roomLength, catalogue, 
+                    mutationInitialStepSize);
+        } else if (strategyType == Strategy.CMA_ES) {
+            parents.disableStepSizes();
+            children.disableStepSizes();
+            strategy = new CmaEsStrategy(nNumber, parents.size(), roomWidth,
+                    roomLength, catalogue.size(), mutationInitialStepSize);
+        } else {
+            strategy = new SelfAdaptiveStrategy(parents, children, nNumber, 
+                    roomWidth, roomLength, catalogue.size(), 
+                    mutationInitialStepSize);
+        }
+    }
+    
+    /**
+     * setScreening
+     * @param pitch Sensor pitch in inches of the screening grid, a multiple
+     * of the 12 inch pitch of the full grid (e.g. 24 or 48). 12 or less 
+     * turns screening off (the default).
+     * @param fraction Fraction of the children that is scored on the full 
+     * grid after screening, at least as many as there are parents
+     * With screening every child is first scored on the coarser grid, which
+     * costs about (12/pitch)^2 of a full evaluation. The coarse intensity and
+     * variation are scaled to the full grid, so the screening fitness is an
+     * estimate of the real one. Only the best fraction of the children by 
+     * that estimate are scored on the full grid and can be selected. See 
+     * getScreeningAudits for how often this changes the selection.
+     */
+    public void setScreening(int pitch, double fraction)
+    {
+        screeningStride = Math.max(1, pitch / 12);
+        screeningFraction = Math.max(0, Math.min(1, fraction));
+        screeningRows = (gridRows + screeningStride - 1) / screeningStride;
+        screeningColumns = 
+                (gridColumns + screeningStride - 1) / screeningStride;
+        // Each screening sensor stands for about cellRatio full ones, and 
+        // neighbours are screeningStride times further apart, so every 
+        // difference between them is about that much larger
+        double cellRatio = (double) (gridRows * gridColumns) 
+                / (screeningRows * screeningColumns);
+        screeningIntensityScale = cellRatio;
+        screeningVariationScale = cellRatio / screeningStride;
+        buildScreeningWeight();
+        if (screeningStride > 1) {
+            allocateScreeningBuffers();
+        }
+    }
+    
+    // Allocate the per-child buffers of screenChildren (once, with the 
+    // first setScreening or setSurrogate that enables it)
+    private void allocateScreeningBuffers()
+    {
+        if (shortlisted == null) {
+            shortlisted = new boolean[children.size()];
+            estimatedFitness = new double[children.size()];
+            rankBuffer = new double[children.size()];
+            estimateRank = new int[children.size()];
+            fitnessRank = new int[children.size()];
+        }
+    }
+    
+    /**
+     * setRoomGeometry
+     * @param geometry Outline and occluders of the room (see RoomGeometry),
+     * or null for the empty roomWidth x roomLength rectangle (the default)
+     * A light then only adds to the sensors it can see, lights placed 
+     * outside the outline or inside an occluder light nothing, and sensors 
+     * outside the room are left out of the variation. The line of sight 
+     * between every light position and every sensor it can reach is worked
+     * out here once, so scoring a solution only tests one bit per light and
+     * sensor. Light positions share these bits in cells of 1 inch, or of a
+     * few inches in large rooms (a sensor is then lit from the whole cell
+     * if the centre or an in-room corner of the cell sees it, see 
+     * getCellPoints) so the bits take at most 32 MB. Call before 
+     * getBestSolution.
+     */
+    public void setRoomGeometry(RoomGeometry geometry)
+    {
+        if (geometry != null) {
+            geometry.checkBounds(roomWidth, roomLength);
+        }
+        this.geometry = geometry;
+        if (geometry == null) {
+            visibility = null;
+            blockedPositions = null;
+            sensorWeight = null;
+        } else {
+            buildVisibility();
+        }
+        buildScreeningWeight();
+        if (fitnessCache != null) {
+            fitnessCache.clear();
+        }
+        if (parents.hasLightGrids()) {
+            for (int p = 0; p < parents.size(); p++) {
+                refreshLightGrid(parents, p);
+            }
+        }
+    }
+    
+    // Precompute the sensor weights, blocked light positions and visibility
+    // bits of the room geometry (see the fields)
+    private void buildVisibility()
+    {
+        sensorWeight = new double[gridRows * gridColumns];
+        for (int i = 0; i < gridRows; i++) {
+            for (int j = 0; j < gridColumns; j++) {
+                sensorWeight[i*gridColumns + j] = geometry.contains(
+                        originRowOffset + i*12, originColumnOffset + j*12) 
+                        ? 1 : 0;
+            }
+        }
+        blockedPositions = 
+                new long[((roomWidth + 1) * (roomLength + 1) + 63) / 64];
+        for (int x = 0; x <= roomWidth; x++) {
+            for (int y = 0; y <= roomLength; y++) {
+                if (!geometry.contains(x, y)) {
+                    int position = x * (roomLength + 1) + y;
+                    blockedPositions[position >>> 6] |= 1L << position;
+                }
+            }
+        }
+        
+        // The smallest cells whose bits fit in MAX_VISIBILITY_BITS
+        int cellsX;
+        long bits;
+        visibilityPitch = 0;
+        do {
+            visibilityPitch++;
+            cellsX = roomWidth / visibilityPitch + 1;
+            visibilityCellsY = roomLength / visibilityPitch + 1;
+            visibilityRows = 0;
+            for (int cx = 0; cx < cellsX; cx++) {
+                visibilityRows = Math.max(visibilityRows, getLastGridRow(
+                        Math.min(roomWidth, (cx + 1) * visibilityPitch - 1),
+                        maxProfileRows) - getFirstGridRow(
+                        cx * visibilityPitch, maxProfileRows) + 1);
+            }
+            visibilityColumns = 0;
+            for (int cy = 0; cy < visibilityCellsY; cy++) {
+                visibilityColumns = Math.max(visibilityColumns, 
+                        getLastGridColumn(Math.min(roomLength, 
+                        (cy + 1) * visibilityPitch - 1), maxProfileColumns)
+                        - getFirstGridColumn(cy * visibilityPitch, 
+                        maxProfileColumns) + 1);
+            }
+            bits = (long) cellsX * visibilityCellsY * visibilityRows 
+                    * visibilityColumns;
+        } while (bits > MAX_VISIBILITY_BITS);
+        visibilityCellBits = visibilityRows * visibilityColumns;
+        visibility = new long[(int) ((bits + 63) / 64)];
+        
+        // Sensors further away than any fixture reaches are never lit
+        double reach = visibilityPitch;
+        for (int op = 0; op < catalogue.size(); op++) {
+            reach = Math.max(reach, 
+                    catalogue.get(op).getReach() + visibilityPitch);
+        }
+        double[] pointX = new double[5];
+        double[] pointY = new double[5];
+        for (int cx = 0; cx < cellsX; cx++) {
+            int firstRow = getFirstGridRow(cx * visibilityPitch, 
+                    maxProfileRows);
+            int minX = cx * visibilityPitch;
+            int maxX = Math.min(roomWidth, (cx + 1) * visibilityPitch - 1);
+            for (int cy = 0; cy < visibilityCellsY; cy++) {
+                int firstColumn = getFirstGridColumn(cy * visibilityPitch, 
+                        maxProfileColumns);
+                int minY = cy * visibilityPitch;
+                int maxY = Math.min(roomLength, 
+                        (cy + 1) * visibilityPitch - 1);
+                int points = getCellPoints(minX, maxX, minY, maxY, 
+                        pointX, pointY);
+                if (points == 0) {
+                    continue;
+                }
+                int base = (cx * visibilityCellsY + cy) * visibilityCellBits;
+                for (int r = 0; r < visibilityRows 
+                        && firstRow + r < gridRows; r++) {
+                    int i = firstRow + r;
+                    for (int c = 0; c < visibilityColumns 
+                            && firstColumn + c < gridColumns; c++) {
+                        int j = firstColumn + c;
+                        if (sensorWeight[i*gridColumns + j] == 0) {
+                            continue;
+                        }
+                        double sensorX = originRowOffset + i*12;
+                        double sensorY = originColumnOffset + j*12;
+                        // Lit if any of the points sees the sensor
+                        for (int p = 0; p < points; p++) {
+                            if (Math.hypot(sensorX - pointX[p], 
+                                    sensorY - pointY[p]) <= reach
+                                    && geometry.isClearPath(pointX[p], 
+                                        pointY[p], sensorX, sensorY)) {
+                                int bit = base + r * visibilityColumns + c;
+                                visibility[bit >>> 6] |= 1L << bit;
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+    
+    // Whether a light at x, y is outside the room (see buildVisibility)
+    private boolean isBlockedPosition(int x, int y)
+    {
+        int position = x * (roomLength + 1) + y;
+        return (blockedPositions[position >>> 6] & (1L << position)) != 0;
+    }
+    
+    /**
+     * getCellPoints
+     * Description: Points in the room that stand for the light positions
+     * minX..maxX x minY..maxY of a visibility cell: the centre and the 
+     * corners that are in the room, or else the first position of the cell
+     * that is. A cell sees a sensor when one of them does, so a light near
+     * the wall or an occluder edge is not blacked out by the cell centre
+     * (lights at the other positions of such a cell may light a sensor they
+     * can not quite see).
+     * @return Returns the number of points written to pointX and pointY, 0
+     * if no position of the cell is in the room.
+     */
+    private int getCellPoints(int minX, int maxX, int minY, int maxY,
+            double[] pointX, double[] pointY)
+    {
+        int points = 0;
+        double centreX = (minX + maxX) / 2.0;
+        double centreY = (minY + maxY) / 2.0;
+        if (geometry.contains(centreX, centreY)) {
+            pointX[points] = centreX;
+            pointY[points++] = centreY;
+        }
+        if (minX == maxX && minY == maxY) {
+            return points;
+        }
+        for (int k = 0; k < 4; k++) {
+            int x = (k & 1) == 0 ? minX : maxX;
+            int y = k < 2 ? minY : maxY;
+            if (!isBlockedPosition(x, y)) {
+                pointX[points] = x;
+                pointY[points++] = y;
+            }
+        }
+        for (int x = minX; x <= maxX && points == 0; x++) {
+            for (int y = minY; y <= maxY && points == 0; y++) {
+                if (!isBlockedPosition(x, y)) {
+                    pointX[points] = x;
+                    pointY[points++] = y;
+                }
+            }
+        }
+        return points;
+    }
+    
+    // Sensor weights of the screening grid (every screeningStride-th sensor
+    // row and column of the full grid)
+    private void buildScreeningWeight()
+    {
+        if (sensorWeight == null || screeningStride <= 1) {
+            screeningWeight = null;
+            return;
+        }
+        screeningWeight = new double[screeningRows * screeningColumns];
+        for (int i = 0; i < screeningRows; i++) {
+            for (int j = 0; j < screeningColumns; j++) {
+                screeningWeight[i*screeningColumns + j] = sensorWeight[
+                        i*screeningStride*gridColumns + j*screeningStride];
+            }
+        }
+    }
+    
+    /**
+     * setPruning
+     * @param enabled Whether the evaluation of a child stops as soon as it
+     * is sure to miss the selection (off by default). Every evaluating 
+     * thread keeps the parents.size()-th best fitness it has scored in the
+     * generation (see PruningThreshold). A child whose fitness bound falls
+     * below it is given up: first when the bound on its overall intensity,
+     * which only needs the light positions, is too low, then while the
+     * variation of its sensor grid is summed row by row (with incremental 
+     * evaluation only the first check is made). At least parents.size() 
+     * children beat such a child, so the selection is the same as with full
+     * evaluations. Strategy.NSGA_II needs the fitness of every child and is
+     * never pruned. See getPrunedEvaluations.
+     */
+    public void setPruning(boolean enabled)
+    {
+        if (enabled && latticeSum == null) {
+            buildLatticeSums();
+        }
+        pruning = enabled;
+        if (enabled && pruned == null) {
+            pruned = new boolean[children.size()];
+        } else if (pruned != null) {
+            Arrays.fill(pruned, false);
+        }
+    }
+    
+    // Children whose evaluation was cut short by pruning (they still count
+    // as evaluations)
+    public long getPrunedEvaluations()
+    {
+        return prunedEvaluations;
+    }
+    
+    // Build latticeSum for every fixture (fixtures with the same profile 
+    // share it)
+    private void buildLatticeSums()
+    {
+        latticeSum = new double[catalogue.size()][];
+        latticeRows = new int[catalogue.size()];
+        latticeColumns = new int[catalogue.size()];
+        latticeSumMargin = new double[catalogue.size()];
+        for (int op = 0; op < catalogue.size(); op++) {
+            // Steps 0, 1, ... up to the last offset in the profile, plus one
+            // for the empty prefix
+            latticeRows[op] = (profileRows[op] + 11) / 12 + 1;
+            latticeColumns[op] = (profileColumns[op] + 11) / 12 + 1;
+            for (int other = 0; other < op; other++) {
+                if (fixtureProfile[other] == fixtureProfile[op]) {
+                    latticeSum[op] = latticeSum[other];
+                    latticeSumMargin[op] = latticeSumMargin[other];
+                    break;
+                }
+            }
+            if (latticeSum[op] == null) {
+                latticeSum[op] = buildLatticeSum(fixtureProfile[op], 
+                        profileRows[op], profileColumns[op], latticeRows[op],
+                        latticeColumns[op]);
+                // A light adds every offset of the profile at most four 
+                // times (once per quadrant); the differences of prefix sums
+                // are off by at most a tiny part of that
+                double total = 0;
+                for (double value : fixtureProfile[op]) {
+                    total += value;
+                }
+                latticeSumMargin[op] = PRUNING_TOLERANCE * 4 * total;
+            }
+        }
+    }
+    
+    // Screened generations in which every child was also scored on the full
+    // grid to check the screening
+    public int getScreeningAudits()
+    {
+        return screeningAudits;
+    }
+    
+    // Audited generations in which screening dropped at least one child
+    // that the full evaluation would have selected
+    public int getScreeningChanges()
+    {
+        return screeningChanges;
+    }
+    
+    // Children over all audits that the full evaluation would have selected
+    // but screening dropped
+    public long getScreeningMisses()
+    {
+        return screeningMisses;
+    }
+    
+    // Children scored on the screening grid
+    public long getScreeningEvaluations()
+    {
+        return screeningEvaluations;
+    }
+    
+    /**
+     * setSurrogate
+     * @param archiveSize Number of recently scored solutions the surrogate 
+     * learns from, 0 disables it (the default)
+     * @param fraction Fraction of the children that is scored on the full 
+     * grid, at least as many as there are parents
+     * The surrogate estimates the fitness of a child from the real fitness
+     * of the most similar solutions scored before (see FitnessSurrogate), 
+     * which costs about archiveSize x lights operations instead of a sensor
+     * grid, so it only pays off in rooms with many sensors. Once it knows 
+     * enough solutions, children are screened by this estimate instead of
+     * the screening grid (see setScreening, whose audits count these 
+     * generations too); every child scored in full is added to it. See
+     * getSkippedEvaluations and GenerationStats.getEstimateCorrelation.
+     */
+    public void setSurrogate(int archiveSize, double fraction)
+    {
+        surrogate = archiveSize > 0 ? new FitnessSurrogate(archiveSize, 
+                SURROGATE_NEIGHBOURS, nNumber) : null;
+        surrogateFraction = Math.max(0, Math.min(1, fraction));
+        if (surrogate != null) {
+            allocateScreeningBuffers();
+        }
+    }
+    
+    // Children that screening (by the screening grid or the surrogate) kept
+    // from being scored on the full grid
+    public long getSkippedEvaluations()
+    {
+        return skippedEvaluations;
+    }
+    
+    /**
+     * setWarmStart
+     * @param store Store of the best layouts of earlier rooms, or null to
+     * start from random lights only (the default)
+     * @param fraction Part of the initial parents (0 to 1) that start from
+     * the stored layouts of the rooms most similar to this one with the 
+     * same fixture catalogue and room geometry (see SolutionStore), the 
+     * others are random. With 0 the store only 
+     * receives the result.
+     * The best solution of every getBestSolution and resumeBestSolution
+     * call is added to the store, so repeated or similar rooms start closer
+     * to a good layout.
+     */
+    public void setWarmStart(SolutionStore store, double fraction)
+    {
+        solutionStore = store;
+        warmStartFraction = Math.max(0, Math.min(1, fraction));
+    }
+    
+    // The error of the last attempt to add a solution to the store, or null
+    public IOException getSolutionStoreError()
+    {
+        return solutionStoreError;
+    }
+    
+    /**
+     * setTimeBudget
+     * @param millis Wall-clock time getBestSolution may take, 0 or less for
+     * no limit (the default). Checked after every generation, so the last
+     * generation can end up to one generation late.
+     */
+    public void setTimeBudget(long millis)
+    {
+        timeBudgetNanos = millis > 0 ? millis * 1000000 : Long.MAX_VALUE;
+    }
+    
+    /**
+     * setEvaluationBudget
+     * @param evaluations Number of solutions getBestSolution may score 
+     * (children found in the fitness cache are free), 0 or less for no limit
+     * (the default). Checked after every generation, so up to one generation 
+     * of children more can be scored.
+     */
+    public void setEvaluationBudget(long evaluations)
+    {
+        evaluationBudget = evaluations > 0 ? evaluations : Long.MAX_VALUE;
+    }
+    
+    /**
+     * setTargetFitness
+     * @param fitness getBestSolution stops once a solution at least this fit
+     * is found. Double.POSITIVE_INFINITY (the default) never stops early.
+     */
+    public void setTargetFitness(double fitness)
+    {
+        targetFitness = fitness;
+    }
+    
+    /**
+     * setStagnationLimit
+     * @param generations Generations without improvement after which a run
+     * ends and another one starts with reset step sizes (default 150)
+     */
+    public void setStagnationLimit(int generations)
+    {
+        stagnationLimit = Math.max(1, generations);
+    }
+    
+    // Ask a running getBestSolution (on another thread) to return after the
+    // current generation
+    public void stop()
+    {
+        stopRequested = true;
+    }
+    
+    /**
+     * getCurrentBestFitness
+     * @return Returns the fitness of the best solution found so far by the
+     * running (or last) optimization. Can be called from any thread while
+     * getBestSolution runs and never blocks it.
+     */
+    public double getCurrentBestFitness()
+    {
+        return bestSoFar.fitness;
+    }
+    
+    /**
+     * getCurrentBestSolution
+     * @return Returns a copy of the best solution found so far, see 
+     * getCurrentBestFitness. Empty before the first generation.
+     */
+    public light[] getCurrentBestSolution()
+    {
+        return bestSoFar.solution.clone();
+    }
+    
+    // Number of parents (mu)
+    int getParentCount()
+    {
+        return parents.size();
+    }
+    
+    /**
+     * receiveMigrants
+     * @param source Island (with the same number of lights and parents) the
+     * migrants come from
+     * @param count Number of migrants, at most half of the parents
+     * Replaces the last count parents (the worst ones right after 
+     * selectParents) with copies of the first count parents of the source 
+     * (its best ones). Used by IslandModel between generations.
+     */
+    void receiveMigrants(LightPos_API source, int count)
+    {
+        for (int i = 0; i < count; i++) {
+            parents.copyIndividual(source.parents, i, parents.size() - 1 - i);
+        }
+    }
+    
+    /**
+     * setCheckpoint
+     * @param file File that receives a checkpoint, or null to stop
+     * checkpointing
+     * @param interval Generations between checkpoints. A checkpoint is also
+     * written when the termination count runs out.
+     * The snapshot is taken between two generations and written by a
+     * background thread, see CheckpointWriter. Resume with loadCheckpoint
+     * and resumeBestSolution.
+     */
+    public void setCheckpoint(Path file, int interval)
+    {
+        if (file != null && !(generatorRandom instanceof SplitRandom)) {
+            throw new IllegalStateException(
+                    "Checkpoints need the default random source");
+        }
+        if (checkpointWriter != null) {
+            checkpointWriter.await();
+            checkpointWriter.close();
+        }
+        checkpointWriter = file != null 
+                ? new CheckpointWriter(file, interval) : null;
+    }
+    
+    // The last error of a background checkpoint write, or null
+    public IOException getCheckpointError()
+    {
+        return checkpointWriter == null ? null : checkpointWriter.getError();
+    }
+    
+    /**
+     * close
+     * Description: Stops the evaluation threads and the checkpoint writer
+     * thread of this optimizer, after the last checkpoint has been written,
+     * and frees populations kept outside the heap (see 
+     * setPopulationStorage). Call it once the optimizer is no longer used 
+     * (IslandModel, BatchRunner and LightPos.main do); it can not run 
+     * generations afterwards.
+     */
+    @Override
+    public void close()
+    {
+        if (evaluationPool != null) {
+            evaluationPool.shutdown();
+        }
+        setCheckpoint(null, 0);
+        strategy.close();
+        parents.close();
+        children.close();
+    }
+    
+    /**
+     * saveCheckpoint
+     * @param file Receives the current state, see loadCheckpoint. Only call
+     * between generations (not while getBestSolution is running on another 
+     * thread).
+     */
+    public void saveCheckpoint(Path file) throws IOException
+    {
+        CheckpointWriter.write(file, saveState());
+    }
+    
+    /**
+     * loadCheckpoint
+     * @param file A checkpoint written by saveCheckpoint or setCheckpoint
+     * @param numThreads Evaluation threads, see the full constructor
+     * @return Returns an optimizer with the parameters, fixture catalogue,
+     * room geometry, strategy and its state, parents,
+     * termination count, best solutions and random generator of the 
+     * checkpoint. Continue it with resumeBestSolution.
+     * Settings that are not part of the state (listener, fitness cache,
+     * incremental evaluation, checkpointing) have to be set again. Parent 
+     * sensor grids are rebuilt, so with incremental evaluation the fitness
+     * may differ from an uninterrupted run in the last digits.
+     */
+    public static LightPos_API loadCheckpoint(Path file, int numThreads) 
+            throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException(file + " is not a LightPos checkpoint");
+            }
+            int version = in.readInt();
+            if (version != CHECKPOINT_VERSION) {
+                throw new IOException("Unsupported checkpoint version " 
+                        + version);
+            }
+            LightPos_API api = new LightPos_API(in.readInt(), in.readInt(),
+                    in.readInt(), in.readInt(), in.readInt(), 
+                    in.readDouble(), 0, numThreads, 
+                    FixtureCatalogue.readFrom(in));
+            if (in.readBoolean()) {
+                api.setRoomGeometry(RoomGeometry.readFrom(in));
+            }
+            api.setStrategy(Strategy.values()[in.readUnsignedByte()]);
+            api.restoreState(in);
+            return api;
+        }
+    }
+    
+    // Serialize everything a resumed run needs (format: see restoreState)
+    private byte[] saveState()
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(CHECKPOINT_VERSION);
+            out.writeInt(parents.size());
+            out.writeInt(children.size());
+            out.writeInt(nNumber);
+            out.writeInt(roomWidth);
+            out.writeInt(roomLength);
+            out.writeDouble(mutationInitialStepSize);
+            catalogue.writeTo(out);
+            out.writeBoolean(geometry != null);
+            if (geometry != null) {
+                geometry.writeTo(out);
+            }
+            out.writeByte(strategyType.ordinal());
+            
+            out.writeInt(terminationCount);
+            out.writeInt(generation);
+            out.writeInt(run);
+            out.writeInt(noProgressCount);
+            out.writeLong(evaluationCount);
+            strategy.writeState(out);
+            out.writeDouble(bestFitness);
+            writeLights(out, bestSolution);
+            out.writeDouble(bestPerRunFitness);
+            writeLights(out, bestPerRunSolution);
+            parents.writeTo(out);
+            if (!(generatorRandom instanceof SplitRandom)) {
+                throw new IllegalStateException(
+                        "Checkpoints need the default random source");
+            }
+            ((SplitRandom) generatorRandom).writeTo(out);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Not possible with in-memory streams
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    // Read the state written by saveState after the constructor parameters
+    private void restoreState(DataInputStream in) throws IOException
+    {
+        terminationCount = in.readInt();
+        generation = in.readInt();
+        run = in.readInt();
+        noProgressCount = in.readInt();
+        evaluationCount = in.readLong();
+        strategy.readState(in);
+        bestFitness = in.readDouble();
+        bestSolution = readLights(in, catalogue);
+        bestPerRunFitness = in.readDouble();
+        bestPerRunSolution = readLights(in, catalogue);
+        bestSoFar = bestPerRunFitness > bestFitness 
+                ? new BestSoFar(bestPerRunFitness, bestPerRunSolution)
+                : new BestSoFar(bestFitness, bestSolution);
+        parents.readFrom(in);
+        generatorRandom = SplitRandom.readFrom(in);
+    }
+    
+    private static void writeLights(DataOutputStream out, light[] solution)
+            throws IOException
+    {
+        out.writeInt(solution.length);
+        for (light l : solution) {
+            out.writeInt(l.getPos_x());
+            out.writeInt(l.getPos_y());
+            out.writeByte(l.getIntensityOp());
+            out.writeBoolean(l.isOn());
+        }
+    }
+    
+    private static light[] readLights(DataInputStream in, 
+            FixtureCatalogue catalogue) throws IOException
+    {
+        light[] solution = new light[in.readInt()];
+        for (int k = 0; k < solution.length; k++) {
+            solution[k] = new light(in.readInt(), in.readInt(), 
+                    in.readUnsignedByte(), in.readBoolean(), catalogue);
+        }
+        return solution;
+    }
+    
+    /**
+     *  class: BestSoFar
+     * Fitness and solution of the best solution so far, published together.
+     */
+    private static final class BestSoFar {
+        static final BestSoFar NONE = 
+                new BestSoFar(-Double.MAX_VALUE, new light[0]);
+        final double fitness;
+        final light[] solution; // light objects are immutable
+        
+        BestSoFar(double fitness, light[] solution) {
+            this.fitness = fitness;
+            this.solution = solution;
+        }
+    }
+    
+    ////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////////CONSTRUCTORS/////////////////////////////////
+    // Maximizer_API
+    public LightPos_API()
+    {
+        // 10 parents, 100 children, 8 lights in each solution, 240"x120" room
+        this(10, 100, 8, 240, 120, 1, 10000, 1);
+    }
+    
+    // Full Constructor (children are evaluated on the calling thread)
+    public LightPos_API(int numParents, int numChildren, int n, int width,
+            int height, double mutationStSz, int terminationNumber)
+    {
+        this(numParents, numChildren, n, width, height, mutationStSz, 
+                terminationNumber, 1);
+    }
+    
+    // Full Constructor with the number of threads used to evaluate the
+    // children each generation. A value of 0 or less uses every available
+    // processor, 1 keeps the evaluation serial.
+    public LightPos_API(int numParents, int numChildren, int n, int width,
+            int height, double mutationStSz, int terminationNumber, 
+            int numThreads)
+    {
+        this(numParents, numChildren, n, width, height, mutationStSz, 
+                terminationNumber, numThreads, FixtureCatalogue.DEFAULT);
+    }
+    
+    // Full Constructor with the fixtures the lights choose from (see 
+    // FixtureCatalogue)
+    public LightPos_API(int numParents, int numChildren, int n, int width,
+            int height, double mutationStSz, int terminationNumber, 
+            int numThreads, FixtureCatalogue catalogue)
+    {
+        this(numParents, numChildren, n, width, height, mutationStSz, 
+                terminationNumber, numThreads, catalogue, Storage.HEAP);
+    }
+    
+    // Full Constructor with the storage of the parents and children (see
+    // setPopulationStorage), so very large populations are never allocated
+    // on the heap
+    public LightPos_API(int numParents, int numChildren, int n, int width,
+            int height, double mutationStSz, int terminationNumber, 
+            int numThreads, FixtureCatalogue catalogue, Storage storage)
+    {
+        this.catalogue = catalogue;
+        nNumber = n; // There are n max lights in this solution
+        parents = new Population(numParents, nNumber, storage);
+        children = new Population(numChildren, nNumber, storage);
+        childParent = new int[numChildren];
+        topSelection = new TopSelection(numChildren);
+        mutationInitialStepSize = mutationStSz;
+        terminationCount = terminationNumber;
+        roomWidth = width;
+        roomLength = height;
+        setStrategy(Strategy.SELF_ADAPTIVE_ES);
+        // divide the room up into a grid or 1 foot between each grid point
+        gridRows = (int) Math.floor(roomWidth / 12);
+        gridColumns = (int) Math.floor(roomLength / 12);
+        originRowOffset = (roomWidth % 12) / 2; 
+        originColumnOffset = (roomLength % 12) / 2; 
+        // Offsets are at most the room size and anything past the reach of
+        // a fixture is out of range, so its table never needs to be larger
+        fixtureProfile = new double[catalogue.size()][];
+        profileRows = new int[catalogue.size()];
+        profileColumns = new int[catalogue.size()];
+        int rows = 0;
+        int columns = 0;
+        for (int op = 0; op < catalogue.size(); op++) {
+            FixtureCatalogue.Fixture fixture = catalogue.get(op);
+            int maxOffset = (int) Math.floor(
+                    Math.min(fixture.getReach(), Integer.MAX_VALUE));
+            profileRows[op] = Math.min(roomWidth, maxOffset) + 1;
+            profileColumns[op] = Math.min(roomLength, maxOffset) + 1;
+            for (int other = 0; other < op; other++) {
+                if (catalogue.get(other).hasSameProfile(fixture)) {
+                    fixtureProfile[op] = fixtureProfile[other];
+                    break;
+                }
+            }
+            if (fixtureProfile[op] == null) {
+                fixtureProfile[op] = buildProfile(fixture, profileRows[op], 
+                        profileColumns[op]);
+            }
+            rows = Math.max(rows, profileRows[op]);
+            columns = Math.max(columns, profileColumns[op]);
         }
+        maxProfileRows = rows;
+        maxProfileColumns = columns;
+        lightGridBuffer = ThreadLocal.withInitial(
+                () -> new double[gridRows * gridColumns]);
+        pruningThreshold = ThreadLocal.withInitial(
+                () -> new PruningThreshold(numParents));
+        evaluationThreads = numThreads > 0 ? numThreads 
+                : Runtime.getRuntime().availableProcessors();
+        evaluationPool = evaluationThreads > 1 
+                ? new ForkJoinPool(evaluationThreads) : null;
+        generationStats = new GenerationStats(pNumber);
     }
 }
@@ -0,0 +1,191 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ *  class: Nsga2Strategy
+ * Multi-objective search (NSGA-II, Deb et al., 2002) for the trade-off
+ * between the illumination quality and the energy of a lighting plan:
+ *      quality = overall intensity - overall variation - lights on
+ *      energy = watts of the lights that are on
+ * (the single fitness of the other strategies is quality - energy).
+ *
+ * Instead of the best children by fitness, the parents of the next
+ * generation are the best of parents and children together by
+ * non-dominated front, and within the last front that fits by crowding
+ * distance (see ParetoSort), so the parents spread out along the Pareto
+ * front. Every child comes from the better of two random parents (lower
+ * front first, then larger crowding distance) and is mutated like in
+ * SelfAdaptiveStrategy, with the step sizes it inherits from that parent.
+ */
+class Nsga2Strategy implements SearchStrategy {
+    private final SelfAdaptiveStrategy variation;
+    private final FixtureCatalogue catalogue;
+    private final ParetoSort paretoSort;
+    private final double[] quality;
+    private final double[] energy;
+    // Front and crowding distance of every parent (tournament selection)
+    private final int[] rank;
+    private final double[] crowding;
+    // The selected parents are gathered here before they replace the old
+    // ones (same step sizes and sensor grids as the parents)
+    private Population survivors;
+
+    public Nsga2Strategy(Population parents, Population children,
+            int nNumber, int roomWidth, int roomLength,
+            FixtureCatalogue catalogue, double mutationInitialStepSize) {
+        variation = new SelfAdaptiveStrategy(parents, children, nNumber,
+                roomWidth, roomLength, catalogue.size(),
+                mutationInitialStepSize);
+        this.catalogue = catalogue;
+        int candidates = parents.size() + children.size();
+        paretoSort = new ParetoSort(candidates);
+        quality = new double[candidates];
+        energy = new double[candidates];
+        rank = new int[parents.size()];
+        crowding = new double[parents.size()];
+    }
+
+    // Reset the step sizes, the parents keep their fronts
+    @Override
+    public void startRun(Population parents) {
+        variation.startRun(parents);
+    }
+
+    /**
+     * generateOffspring
+     * Description: Pick the parent of every child by binary tournament and
+     * mutate each of the new child sets.
+     */
+    @Override
+    public void generateOffspring(Population parents, Population children,
+            int[] childParent, RandomSource random)
+    {
+        for (int i = 0; i < children.size(); i++) {
+            childParent[i] = tournament(random.nextInt(parents.size()),
+                    random.nextInt(parents.size()), random);
+        }
+        for (int i = 0; i < children.size(); i++) {
+            variation.mutate(parents, childParent[i], children, i, random);
+        }
+    }
+
+    /**
+     * tournament
+     * @param x index of a parent solution
+     * @param y index of a parent solution
+     * @return Return the parent in the better front, or in the less crowded
+     * part of the same front (crowded-comparison operator)
+     */
+    private int tournament(int x, int y, RandomSource random) {
+        if (rank[x] != rank[y]) {
+            return rank[x] < rank[y] ? x : y;
+        }
+        if (crowding[x] != crowding[y]) {
+            return crowding[x] > crowding[y] ? x : y;
+        }
+        return random.nextBoolean() ? x : y;
+    }
+
+    /**
+     * selectParents
+     * Description: Replaces the parents with the best parents.size() of the
+     * parents and children together (see ParetoSort.select).
+     */
+    @Override
+    public boolean selectParents(Population parents, Population children) {
+        int mu = parents.size();
+        int candidates = mu + children.size();
+        for (int i = 0; i < mu; i++) {
+            setObjectives(i, parents, i);
+        }
+        for (int i = 0; i < children.size(); i++) {
+            setObjectives(mu + i, children, i);
+        }
+        int[] selected = paretoSort.select(quality, energy, candidates, mu);
+
+        if (survivors == null
+                || survivors.hasLightGrids() != parents.hasLightGrids()
+                || survivors.getStorage() != parents.getStorage()) {
+            close();
+            survivors = new Population(mu, parents.nNumber,
+                    parents.getStorage());
+            survivors.enableStepSizes(parents.stepSizeCount);
+            if (parents.hasLightGrids()) {
+                survivors.enableLightGrids(parents.gridCells);
+            }
+        }
+        for (int i = 0; i < mu; i++) {
+            int candidate = selected[i];
+            if (candidate < mu) {
+                survivors.copyIndividual(parents, candidate, i);
+            } else {
+                survivors.copyIndividual(children, candidate - mu, i);
+            }
+            rank[i] = paretoSort.getRank(candidate);
+            crowding[i] = paretoSort.getCrowding(candidate);
+        }
+        for (int i = 0; i < mu; i++) {
+            parents.copyIndividual(survivors, i, i);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (survivors != null) {
+            survivors.close();
+            survivors = null;
+        }
+    }
+
+    // Every child can be on the Pareto front
+    @Override
+    public boolean usesEveryChildFitness() {
+        return true;
+    }
+
+    // Quality and energy of an individual with a known fitness
+    private void setObjectives(int candidate, Population solutions,
+            int individual) {
+        double fitness = solutions.fitness[individual];
+        int watts = solutions.getWatts(individual, catalogue);
+        energy[candidate] = watts;
+        quality[candidate] = ParetoSort.getQuality(fitness, watts);
+    }
+
+    @Override
+    public void parentsSelected(Population parents) {
+        variation.parentsSelected(parents);
+    }
+
+    @Override
+    public double getStepSize(int parameter) {
+        return variation.getStepSize(parameter);
+    }
+
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        variation.writeState(out);
+        for (int i = 0; i < rank.length; i++) {
+            out.writeInt(rank[i]);
+            out.writeDouble(crowding[i]);
+        }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        variation.readState(in);
+        for (int i = 0; i < rank.length; i++) {
+            rank[i] = in.readInt();
+            crowding[i] = in.readDouble();
+        }
+    }
+}
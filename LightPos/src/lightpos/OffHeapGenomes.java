@@ -0,0 +1,301 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ *  class: OffHeapGenomes
+ * Lights kept outside the Java heap, in direct buffers or in buffers mapped
+ * from a temporary file (the page cache can then hold populations larger
+ * than the memory of the process). The heap only holds a few buffer objects
+ * however large the population is, and the collector never looks at the
+ * records.
+ *
+ * Every individual is one record of fixed layout, its lights one after the
+ * other:
+ *      pos_x (int), pos_y (int), intensityOp (unsigned byte), power (byte)
+ * and its step sizes (doubles) are one record of a second set of buffers.
+ * intensityOp fits the byte because a catalogue has at most
+ * FixtureCatalogue.MAX_FIXTURES fixtures.
+ * A buffer holds at most SEGMENT_BYTES, so large populations are split into
+ * segments of a power of two records each (records never cross segments).
+ *
+ * The collector only sees the small buffer objects, so it may take a long
+ * time to free the memory behind them: close frees it at once.
+ */
+final class OffHeapGenomes implements GenomeStorage {
+    private static final int LIGHT_BYTES = 10;
+    private static final int SEGMENT_BYTES = 1 << 30;
+    // Frees the memory of a direct buffer: Unsafe.invokeCleaner (Java 9
+    // and later) or DirectBuffer.cleaner().clean() (Java 8), null if
+    // neither is accessible (the collector frees it then)
+    private static final BufferFreer FREER = BufferFreer.find();
+
+    private final int size;
+    private final int nNumber;
+    private final boolean mapped;
+    private final Records lights;
+    private int stepSizeCount;
+    private Records stepSizes; // null unless enabled
+
+    /**
+     * @param size Number of individuals
+     * @param nNumber Number of lights per individual
+     * @param mapped Map the records from a temporary file instead of
+     * allocating direct buffers
+     */
+    public OffHeapGenomes(int size, int nNumber, boolean mapped) {
+        this.size = size;
+        this.nNumber = nNumber;
+        this.mapped = mapped;
+        this.lights = new Records(size, nNumber * LIGHT_BYTES, mapped);
+    }
+
+    @Override
+    public int getPos_x(int individual, int lightIndex) {
+        return lights.segment(individual).getInt(
+                lights.offset(individual) + lightIndex * LIGHT_BYTES);
+    }
+
+    @Override
+    public int getPos_y(int individual, int lightIndex) {
+        return lights.segment(individual).getInt(
+                lights.offset(individual) + lightIndex * LIGHT_BYTES + 4);
+    }
+
+    @Override
+    public int getIntensityOp(int individual, int lightIndex) {
+        return lights.segment(individual).get(
+                lights.offset(individual) + lightIndex * LIGHT_BYTES + 8)
+                & 0xFF;
+    }
+
+    @Override
+    public boolean isOn(int individual, int lightIndex) {
+        return lights.segment(individual).get(
+                lights.offset(individual) + lightIndex * LIGHT_BYTES + 9) != 0;
+    }
+
+    @Override
+    public void setLight(int individual, int lightIndex, int pos_x,
+            int pos_y, int intensityOp, boolean power) {
+        ByteBuffer segment = lights.segment(individual);
+        int offset = lights.offset(individual) + lightIndex * LIGHT_BYTES;
+        segment.putInt(offset, pos_x);
+        segment.putInt(offset + 4, pos_y);
+        segment.put(offset + 8, (byte) intensityOp);
+        segment.put(offset + 9, (byte) (power ? 1 : 0));
+    }
+
+    @Override
+    public void enableStepSizes(int count) {
+        disableStepSizes();
+        this.stepSizeCount = count;
+        this.stepSizes = new Records(size, Math.max(1, count) * 8, mapped);
+    }
+
+    @Override
+    public void disableStepSizes() {
+        if (stepSizes != null) {
+            stepSizes.free();
+        }
+        this.stepSizeCount = 0;
+        this.stepSizes = null;
+    }
+
+    @Override
+    public boolean hasStepSizes() {
+        return stepSizes != null;
+    }
+
+    @Override
+    public double getStepSize(int individual, int parameter) {
+        return stepSizes.segment(individual).getDouble(
+                stepSizes.offset(individual) + parameter * 8);
+    }
+
+    @Override
+    public void setStepSize(int individual, int parameter, double value) {
+        stepSizes.segment(individual).putDouble(
+                stepSizes.offset(individual) + parameter * 8, value);
+    }
+
+    @Override
+    public void close() {
+        lights.free();
+        disableStepSizes();
+    }
+
+    @Override
+    public void copyIndividual(GenomeStorage source, int from, int to,
+            int nNumber, int stepSizeCount) {
+        if (!(source instanceof OffHeapGenomes)) {
+            GenomeStorage.super.copyIndividual(source, from, to, nNumber,
+                    stepSizeCount);
+            return;
+        }
+        OffHeapGenomes offHeap = (OffHeapGenomes) source;
+        lights.copyRecord(offHeap.lights, from, to);
+        if (hasStepSizes() && offHeap.hasStepSizes()) {
+            stepSizes.copyRecord(offHeap.stepSizes, from, to);
+        }
+    }
+
+    /**
+     *  class: Records
+     * count records of recordBytes bytes each in segments of
+     * 2^shift records.
+     */
+    private static final class Records {
+        private final ByteBuffer[] segments;
+        private final int recordBytes;
+        private final int shift;
+        private final int mask;
+
+        Records(int count, int recordBytes, boolean mapped) {
+            if (recordBytes > SEGMENT_BYTES) {
+                throw new IllegalArgumentException(
+                        "Individual too large for off-heap storage");
+            }
+            this.recordBytes = recordBytes;
+            this.shift = 31 - Integer.numberOfLeadingZeros(
+                    SEGMENT_BYTES / recordBytes);
+            this.mask = (1 << shift) - 1;
+            segments = new ByteBuffer[Math.max(1,
+                    (count + mask) >>> shift)];
+            long remaining = (long) count * recordBytes;
+            try {
+                for (int s = 0; s < segments.length; s++) {
+                    int bytes = (int) Math.min(remaining,
+                            (long) recordBytes << shift);
+                    segments[s] = (mapped ? map(bytes)
+                            : ByteBuffer.allocateDirect(bytes))
+                            .order(ByteOrder.nativeOrder());
+                    remaining -= bytes;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(
+                        "Cannot map population storage", e);
+            }
+        }
+
+        ByteBuffer segment(int record) {
+            return segments[record >>> shift];
+        }
+
+        int offset(int record) {
+            return (record & mask) * recordBytes;
+        }
+
+        // Copy record "from" of the source (same record size) over "to",
+        // eight bytes at a time
+        void copyRecord(Records source, int from, int to) {
+            ByteBuffer src = source.segment(from);
+            ByteBuffer dst = segment(to);
+            int srcOffset = source.offset(from);
+            int dstOffset = offset(to);
+            int i = 0;
+            for (; i + 8 <= recordBytes; i += 8) {
+                dst.putLong(dstOffset + i, src.getLong(srcOffset + i));
+            }
+            for (; i < recordBytes; i++) {
+                dst.put(dstOffset + i, src.get(srcOffset + i));
+            }
+        }
+
+        // Free every segment; any later access throws a
+        // NullPointerException instead of reading freed memory
+        void free() {
+            for (int s = 0; s < segments.length; s++) {
+                if (segments[s] != null && FREER != null) {
+                    FREER.free(segments[s]);
+                }
+                segments[s] = null;
+            }
+        }
+
+        // A buffer mapped from a new temporary file, which is deleted at
+        // once (the mapping stays valid) or else when the JVM exits
+        private static ByteBuffer map(int bytes) throws IOException {
+            Path file = Files.createTempFile("lightpos", ".pop");
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(),
+                    "rw")) {
+                raf.setLength(bytes);
+                return raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                        0, bytes);
+            } finally {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    // Windows can not delete a mapped file
+                    file.toFile().deleteOnExit();
+                }
+            }
+        }
+    }
+
+    /**
+     *  class: BufferFreer
+     * Frees direct and mapped buffers through the JDK internals that
+     * ByteBuffer does not expose, found by reflection so the class loads
+     * on every Java version.
+     */
+    private static final class BufferFreer {
+        private final Object unsafe; // null on Java 8
+        private final Method method; // invokeCleaner, or cleaner on Java 8
+
+        private BufferFreer(Object unsafe, Method method) {
+            this.unsafe = unsafe;
+            this.method = method;
+        }
+
+        static BufferFreer find() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Method invokeCleaner = unsafeClass.getMethod(
+                        "invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                return new BufferFreer(theUnsafe.get(null), invokeCleaner);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Java 8: no invokeCleaner
+            }
+            try {
+                Method cleaner = Class.forName("sun.nio.ch.DirectBuffer")
+                        .getMethod("cleaner");
+                return new BufferFreer(null, cleaner);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        void free(ByteBuffer buffer) {
+            try {
+                if (unsafe != null) {
+                    method.invoke(unsafe, buffer);
+                } else {
+                    Object cleaner = method.invoke(buffer);
+                    if (cleaner != null) {
+                        cleaner.getClass().getMethod("clean")
+                                .invoke(cleaner);
+                    }
+                }
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Left to the collector
+            }
+        }
+    }
+}
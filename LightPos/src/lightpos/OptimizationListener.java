@@ -0,0 +1,35 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+/**
+ *  interface: OptimizationListener
+ * Receives the progress of a LightPos_API optimization. All methods are
+ * called on the thread that runs the generations, in this order within one
+ * generation: runImproved, generationFinished, bestImproved, runRestarted.
+ * Implementations should return quickly, the next generation waits for them.
+ */
+public interface OptimizationListener {
+    // Listener that ignores everything (the LightPos_API default)
+    OptimizationListener NONE = new OptimizationListener() { };
+
+    /**
+     * generationFinished
+     * @param stats Statistics of the generation that just finished. The
+     * object is reused for the next generation, copy what you want to keep.
+     */
+    default void generationFinished(GenerationStats stats) { }
+
+    // The best fitness of the current run improved in this generation
+    default void runImproved(int generation, double fitness) { }
+
+    // The run that just ended beat the best fitness of all earlier runs
+    default void bestImproved(int generation, double fitness) { }
+
+    // The current run stagnated, the mutation step sizes are reset and the
+    // next run starts from the current parents
+    default void runRestarted(int generation, int run) { }
+}
@@ -0,0 +1,42 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+/**
+ *  class: ParetoSolution
+ * One lighting plan of a Pareto front (see LightPos_API.getParetoFront):
+ * its lights, illumination quality (overall intensity - overall variation -
+ * lights on) and energy (watts of the lights that are on). No other plan
+ * of the front has both a higher quality and fewer watts.
+ */
+public final class ParetoSolution {
+    private final light[] lights;
+    private final double quality;
+    private final int watts;
+
+    ParetoSolution(light[] lights, double quality, int watts) {
+        this.lights = lights;
+        this.quality = quality;
+        this.watts = watts;
+    }
+
+    public light[] getLights() {
+        return lights;
+    }
+
+    public double getQuality() {
+        return quality;
+    }
+
+    public int getWatts() {
+        return watts;
+    }
+
+    // The single fitness of the plan (quality - watts)
+    public double getFitness() {
+        return quality - watts;
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+/**
+ *  class: ParetoSort
+ * Fast non-dominated sorting and crowding distance of NSGA-II (Deb et al.,
+ * 2002) for the two objectives of a lighting plan: the illumination quality
+ * (maximized) and the energy (minimized). A candidate dominates another one
+ * when it is at least as good in both and better in one of them. Candidates
+ * with a quality of -Double.MAX_VALUE (no light on) or NaN are infeasible:
+ * every feasible candidate dominates them (see getQuality).
+ *
+ * Works on buffers that are reused for every call, so sorting does not
+ * allocate.
+ */
+class ParetoSort {
+    private final int[] dominationCount;
+    private final int[] order; // candidates front by front
+    private final int[] frontStart; // front f is order[frontStart[f]..]
+    private final int[] rank;
+    private final double[] crowding;
+    private final double[] key;
+    private final int[] selected;
+    private final TopSelection topSelection;
+    private int fronts;
+
+    public ParetoSort(int capacity) {
+        dominationCount = new int[capacity];
+        order = new int[capacity];
+        frontStart = new int[capacity + 1];
+        rank = new int[capacity];
+        crowding = new double[capacity];
+        key = new double[capacity];
+        selected = new int[capacity];
+        topSelection = new TopSelection(capacity);
+    }
+
+    // Quality of a solution with the given fitness and watts, or 
+    // -Double.MAX_VALUE if it is infeasible (no light on, or a NaN fitness
+    // as in TopSelection)
+    static double getQuality(double fitness, int watts) {
+        return fitness > -Double.MAX_VALUE ? fitness + watts
+                : -Double.MAX_VALUE;
+    }
+
+    // Whether candidate a dominates candidate b
+    private static boolean dominates(double qualityA, double energyA,
+            double qualityB, double energyB) {
+        if (!(qualityA > -Double.MAX_VALUE)) {
+            return false;
+        }
+        if (!(qualityB > -Double.MAX_VALUE)) {
+            return true;
+        }
+        return qualityA >= qualityB && energyA <= energyB
+                && (qualityA > qualityB || energyA < energyB);
+    }
+
+    /**
+     * sort
+     * @param quality Quality of every candidate
+     * @param energy Energy of every candidate
+     * @param n Number of candidates
+     * Sorts the candidates into fronts: front 0 is not dominated by any
+     * candidate, front 1 only by front 0 and so on (see getRank). Every
+     * candidate is compared with every other one once to count how many
+     * dominate it, then each front lowers the counts of the candidates it
+     * dominates, so this takes O(n^2) comparisons and no dominated lists.
+     */
+    public void sort(double[] quality, double[] energy, int n) {
+        int size = 0;
+        for (int p = 0; p < n; p++) {
+            int count = 0;
+            for (int q = 0; q < n; q++) {
+                if (dominates(quality[q], energy[q], quality[p], energy[p])) {
+                    count++;
+                }
+            }
+            dominationCount[p] = count;
+            if (count == 0) {
+                order[size++] = p;
+            }
+        }
+        fronts = 0;
+        int start = 0;
+        while (start < size) {
+            int end = size;
+            frontStart[fronts++] = start;
+            for (int k = start; k < end; k++) {
+                int p = order[k];
+                rank[p] = fronts - 1;
+                for (int q = 0; q < n; q++) {
+                    if (dominationCount[q] > 0 && dominates(quality[p],
+                            energy[p], quality[q], energy[q])
+                            && --dominationCount[q] == 0) {
+                        order[size++] = q;
+                    }
+                }
+            }
+            start = end;
+        }
+        frontStart[fronts] = size;
+    }
+
+    /**
+     * select
+     * @param quality Quality of every candidate
+     * @param energy Energy of every candidate
+     * @param n Number of candidates
+     * @param count Number of candidates to select (at most n)
+     * @return Returns a buffer whose first count entries are the selected
+     * candidates: whole fronts, best first, and from the front that does not
+     * fit any more the ones with the largest crowding distance. The buffer
+     * is reused by the next call. See getRank and getCrowding.
+     */
+    public int[] select(double[] quality, double[] energy, int n, int count) {
+        sort(quality, energy, n);
+        int taken = 0;
+        for (int f = 0; f < fronts && taken < count; f++) {
+            int start = frontStart[f];
+            int size = frontStart[f + 1] - start;
+            setCrowding(quality, energy, start, size);
+            if (taken + size <= count) {
+                System.arraycopy(order, start, selected, taken, size);
+                taken += size;
+            } else {
+                // Keep the ones in the least crowded parts of the front
+                for (int k = 0; k < size; k++) {
+                    key[k] = crowding[order[start + k]];
+                }
+                int[] best = topSelection.selectBest(key, size,
+                        count - taken);
+                for (int k = 0; k < count - taken; k++) {
+                    selected[taken + k] = order[start + best[k]];
+                }
+                taken = count;
+            }
+        }
+        return selected;
+    }
+
+    // Crowding distance of the members order[start..start+size) of a front:
+    // the sum over both objectives of the distance between the neighbours on
+    // either side, relative to the range of the front. The members at both
+    // ends of either objective get an infinite distance so they are kept.
+    private void setCrowding(double[] quality, double[] energy, int start,
+            int size) {
+        for (int k = 0; k < size; k++) {
+            crowding[order[start + k]] = 0;
+        }
+        for (int objective = 0; objective < 2; objective++) {
+            // Highest quality first, or lowest energy first
+            for (int k = 0; k < size; k++) {
+                int p = order[start + k];
+                key[k] = objective == 0 ? quality[p] : -energy[p];
+            }
+            int[] sorted = topSelection.selectBest(key, size, size);
+            double first = key[sorted[0]];
+            double range = first - key[sorted[size - 1]];
+            crowding[order[start + sorted[0]]] = Double.POSITIVE_INFINITY;
+            crowding[order[start + sorted[size - 1]]] =
+                    Double.POSITIVE_INFINITY;
+            if (!(range > 0)) {
+                continue;
+            }
+            for (int k = 1; k < size - 1; k++) {
+                crowding[order[start + sorted[k]]] += (key[sorted[k - 1]]
+                        - key[sorted[k + 1]]) / range;
+            }
+        }
+    }
+
+    // Front of a candidate (0 for the non-dominated ones) after sort/select
+    public int getRank(int candidate) {
+        return rank[candidate];
+    }
+
+    // Crowding distance of a candidate after select (only set for the fronts
+    // that were looked at)
+    public double getCrowding(int candidate) {
+        return crowding[candidate];
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ *  class: Population
+ * A fixed number of solutions stored as primitive values instead of light
+ * objects, so the generation loop can copy, mutate and score solutions
+ * without allocating. The lights and step sizes live in a GenomeStorage:
+ * flat heap arrays by default, or fixed-size records outside the heap (see
+ * setStorage); fitness values and sensor grids are always heap arrays.
+ */
+class Population {
+    final int size; // number of individuals
+    final int nNumber; // number of lights per individual
+    private GenomeStorage genomes;
+    private LightPos_API.Storage storage = LightPos_API.Storage.HEAP;
+    final double[] fitness; // last known fitness of every individual
+
+    // Optional sensor grid of every individual (row-major, gridCells values
+    // starting at individual * gridCells) and its overall intensity and
+    // variation, kept for incremental evaluation. Null unless enabled.
+    int gridCells;
+    double[] lightGrid;
+    double[] overallIntensity;
+    double[] overallVariation;
+    int[] incrementalCount; // incremental updates since the last full grid
+    
+    // Optional self-adaptive mutation step sizes, stepSizeCount values per
+    // individual starting at individual * stepSizeCount. Null unless enabled.
+    int stepSizeCount;
+
+    public Population(int size, int nNumber) {
+        this(size, nNumber, LightPos_API.Storage.HEAP);
+    }
+
+    public Population(int size, int nNumber, LightPos_API.Storage storage) {
+        this.size = size;
+        this.nNumber = nNumber;
+        this.fitness = new double[size];
+        this.storage = storage;
+        this.genomes = createGenomes(storage);
+    }
+
+    private GenomeStorage createGenomes(LightPos_API.Storage storage) {
+        switch (storage) {
+            case DIRECT:
+                return new OffHeapGenomes(size, nNumber, false);
+            case MAPPED:
+                return new OffHeapGenomes(size, nNumber, true);
+            default:
+                return new HeapGenomes(size, nNumber);
+        }
+    }
+
+    public LightPos_API.Storage getStorage() {
+        return storage;
+    }
+
+    // Move the lights and step sizes of every individual to another kind
+    // of storage
+    public void setStorage(LightPos_API.Storage storage) {
+        if (storage == this.storage) {
+            return;
+        }
+        GenomeStorage moved = createGenomes(storage);
+        if (genomes.hasStepSizes()) {
+            moved.enableStepSizes(stepSizeCount);
+        }
+        for (int i = 0; i < size; i++) {
+            moved.copyIndividual(genomes, i, i, nNumber, stepSizeCount);
+        }
+        genomes.close();
+        this.genomes = moved;
+        this.storage = storage;
+    }
+
+    // Free the lights and step sizes kept outside the heap (see
+    // GenomeStorage.close); the population can not be used afterwards
+    public void close() {
+        genomes.close();
+    }
+
+    // Allocate the per-individual sensor grids used by incremental evaluation
+    public void enableLightGrids(int gridCells) {
+        this.gridCells = gridCells;
+        this.lightGrid = new double[size * gridCells];
+        this.overallIntensity = new double[size];
+        this.overallVariation = new double[size];
+        this.incrementalCount = new int[size];
+    }
+
+    public void disableLightGrids() {
+        this.lightGrid = null;
+        this.overallIntensity = null;
+        this.overallVariation = null;
+        this.incrementalCount = null;
+    }
+
+    public boolean hasLightGrids() {
+        return lightGrid != null;
+    }
+
+    // Allocate per-individual mutation step sizes (see SelfAdaptiveStrategy)
+    public void enableStepSizes(int count) {
+        this.stepSizeCount = count;
+        genomes.enableStepSizes(count);
+    }
+
+    public void disableStepSizes() {
+        this.stepSizeCount = 0;
+        genomes.disableStepSizes();
+    }
+
+    public boolean hasStepSizes() {
+        return genomes.hasStepSizes();
+    }
+
+    public double getStepSize(int individual, int parameter) {
+        return genomes.getStepSize(individual, parameter);
+    }
+
+    public void setStepSize(int individual, int parameter, double value) {
+        genomes.setStepSize(individual, parameter, value);
+    }
+
+    //number of individuals
+    public int size() {
+        return size;
+    }
+
+    //inches
+    public int getPos_x(int individual, int lightIndex) {
+        return genomes.getPos_x(individual, lightIndex);
+    }
+
+    //inches
+    public int getPos_y(int individual, int lightIndex) {
+        return genomes.getPos_y(individual, lightIndex);
+    }
+
+    //enum for initialization
+    public int getIntensityOp(int individual, int lightIndex) {
+        return genomes.getIntensityOp(individual, lightIndex);
+    }
+
+    //boolean
+    public boolean isOn(int individual, int lightIndex) {
+        return genomes.isOn(individual, lightIndex);
+    }
+
+    public void setLight(int individual, int lightIndex, int pos_x, int pos_y,
+            int intensityOp, boolean power) {
+        genomes.setLight(individual, lightIndex, pos_x, pos_y, intensityOp,
+                power);
+    }
+
+    // Total watts of the lights of an individual that are on
+    public int getWatts(int individual, FixtureCatalogue catalogue) {
+        int totalWatts = 0;
+        for (int k = 0; k < nNumber; k++) {
+            if (isOn(individual, k)) {
+                totalWatts += catalogue.getWatts(getIntensityOp(individual, k));
+            }
+        }
+        return totalWatts;
+    }
+
+    // Copy individual "from" of the source population over individual "to"
+    public void copyIndividual(Population source, int from, int to) {
+        genomes.copyIndividual(source.genomes, from, to, nNumber,
+                stepSizeCount);
+        fitness[to] = source.fitness[from];
+        if (hasLightGrids() && source.hasLightGrids()) {
+            copyLightGrid(source, from, to);
+        }
+    }
+
+    // Copy only the sensor grid state of individual "from" of the source
+    // population over individual "to"
+    public void copyLightGrid(Population source, int from, int to) {
+        System.arraycopy(source.lightGrid, from * gridCells, lightGrid,
+                to * gridCells, gridCells);
+        overallIntensity[to] = source.overallIntensity[from];
+        overallVariation[to] = source.overallVariation[from];
+        incrementalCount[to] = source.incrementalCount[from];
+    }
+
+    // Write the parameters, fitness and step sizes (if enabled) of every 
+    // individual (checkpoints)
+    public void writeTo(DataOutput out) throws IOException {
+        for (int i = 0; i < size; i++) {
+            for (int k = 0; k < nNumber; k++) {
+                out.writeInt(getPos_x(i, k));
+                out.writeInt(getPos_y(i, k));
+                out.writeByte(getIntensityOp(i, k));
+                out.writeBoolean(isOn(i, k));
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(fitness[i]);
+        }
+        if (hasStepSizes()) {
+            for (int i = 0; i < size; i++) {
+                for (int p = 0; p < stepSizeCount; p++) {
+                    out.writeDouble(getStepSize(i, p));
+                }
+            }
+        }
+    }
+
+    // Read what writeTo wrote, into a population of the same size (and with
+    // the same step sizes enabled). Sensor grids are not stored and have to
+    // be rebuilt.
+    public void readFrom(DataInput in) throws IOException {
+        for (int i = 0; i < size; i++) {
+            for (int k = 0; k < nNumber; k++) {
+                setLight(i, k, in.readInt(), in.readInt(),
+                        in.readUnsignedByte(), in.readBoolean());
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            fitness[i] = in.readDouble();
+        }
+        if (hasStepSizes()) {
+            for (int i = 0; i < size; i++) {
+                for (int p = 0; p < stepSizeCount; p++) {
+                    setStepSize(i, p, in.readDouble());
+                }
+            }
+        }
+    }
+
+    // Build light objects for one individual (only used at the edges of the
+    // optimizer, never inside the generation loop)
+    public light[] toLights(int individual, FixtureCatalogue catalogue) {
+        light[] solution = new light[nNumber];
+        for (int k = 0; k < nNumber; k++) {
+            solution[k] = new light(getPos_x(individual, k),
+                    getPos_y(individual, k), getIntensityOp(individual, k),
+                    isOn(individual, k), catalogue);
+        }
+        return solution;
+    }
+
+    // Store light objects as one individual
+    public void setLights(int individual, light[] solution) {
+        for (int k = 0; k < nNumber; k++) {
+            setLight(individual, k, solution[k].getPos_x(),
+                    solution[k].getPos_y(), solution[k].getIntensityOp(),
+                    solution[k].isOn());
+        }
+    }
+}
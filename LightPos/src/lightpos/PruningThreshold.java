@@ -0,0 +1,80 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+/**
+ *  class: PruningThreshold
+ * The count-th best fitness that one evaluating thread has scored in the
+ * current generation (see LightPos_API.setPruning). At least count children
+ * of the generation are at least this fit, so a child that is sure to score
+ * below it can never be selected. Every thread keeps its own threshold, so
+ * no state is shared between evaluating threads; a thread's threshold is
+ * never above the one of the whole generation.
+ *
+ * The best values are kept in a min-heap, the threshold is its root.
+ */
+final class PruningThreshold {
+    private final double[] heap;
+    private int size;
+    private int round = -1;
+
+    public PruningThreshold(int count) {
+        heap = new double[count];
+    }
+
+    // Forget the fitness values of an earlier generation (round numbers the
+    // evaluation passes)
+    public void startRound(int round) {
+        if (this.round != round) {
+            this.round = round;
+            size = 0;
+        }
+    }
+
+    /**
+     * get
+     * @return Returns the count-th best fitness offered since startRound, or
+     * -Double.MAX_VALUE while fewer than count have been offered (nothing can
+     * be pruned yet).
+     */
+    public double get() {
+        return size < heap.length ? -Double.MAX_VALUE : heap[0];
+    }
+
+    // Add the fitness of a child that can be selected
+    public void offer(double fitness) {
+        if (Double.isNaN(fitness)) {
+            return;
+        }
+        if (size < heap.length) {
+            // sift up
+            int i = size++;
+            while (i > 0 && heap[(i - 1) / 2] > fitness) {
+                heap[i] = heap[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heap[i] = fitness;
+        } else if (fitness > heap[0]) {
+            // replace the root and sift down
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= fitness) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = fitness;
+        }
+    }
+}
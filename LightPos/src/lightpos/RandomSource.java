@@ -0,0 +1,51 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+/**
+ *  interface: RandomSource
+ * The random numbers the optimizer draws from: initial lights, mutations,
+ * recombination, tournaments, warm starts and migration targets. The
+ * default source is SplitRandom (create), another one can be set with
+ * LightPos_API.setRandomSource, e.g. to compare generators or to replay
+ * recorded numbers. A source is used by one thread at a time.
+ *
+ * Checkpoints store the state of the default source only, see
+ * LightPos_API.setRandomSource.
+ */
+public interface RandomSource {
+    long nextLong();
+
+    // Uniform in [0, bound), bound > 0
+    int nextInt(int bound);
+
+    // Uniform in [0, 1)
+    double nextDouble();
+
+    boolean nextBoolean();
+
+    // Standard normal (mean 0, deviation 1)
+    double nextGaussian();
+
+    /**
+     * split
+     * @return Returns a new source whose numbers are independent of the
+     * ones of this source, for another thread (every island of an
+     * IslandModel has its own). Splitting advances this source, so the
+     * result repeats with its seed.
+     */
+    RandomSource split();
+
+    // The default source with an unpredictable seed
+    static RandomSource create() {
+        return new SplitRandom();
+    }
+
+    // The default source; the same seed gives the same numbers
+    static RandomSource create(long seed) {
+        return new SplitRandom(seed);
+    }
+}
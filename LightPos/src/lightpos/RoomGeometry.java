@@ -0,0 +1,300 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  class: RoomGeometry
+ * The shape of a room that is not an empty rectangle: a polygonal outline
+ * (e.g. an L-shaped room) and rectangular occluders inside it (columns,
+ * shelving) that block light. Coordinates are inches in the same frame as
+ * the light positions, so the outline has to fit in the roomWidth x
+ * roomLength rectangle of the optimizer. See LightPos_API.setRoomGeometry.
+ *
+ * Geometry file: one item per line, "#" starts a comment:
+ *      outline 0,0 240,0 240,120 120,120 120,240 0,240
+ *      occluder 50,50 62,62
+ * The outline lists the corners in order (exactly one outline line), an
+ * occluder gives two opposite corners of a rectangle.
+ */
+public final class RoomGeometry {
+    private final int[] outlineX;
+    private final int[] outlineY;
+    // Occluder i covers minX[i]..maxX[i] x minY[i]..maxY[i]
+    private final int[] minX;
+    private final int[] minY;
+    private final int[] maxX;
+    private final int[] maxY;
+
+    /**
+     * @param outline Corners of the room in order, outline[i] = {x, y}
+     * @param occluders Rectangles that block light, occluders[i] =
+     * {x0, y0, x1, y1} with two opposite corners
+     */
+    public RoomGeometry(int[][] outline, int[][] occluders) {
+        if (outline.length < 3) {
+            throw new IllegalArgumentException(
+                    "An outline needs at least 3 corners");
+        }
+        outlineX = new int[outline.length];
+        outlineY = new int[outline.length];
+        for (int i = 0; i < outline.length; i++) {
+            if (outline[i].length != 2) {
+                throw new IllegalArgumentException(
+                        "An outline corner needs x and y");
+            }
+            outlineX[i] = outline[i][0];
+            outlineY[i] = outline[i][1];
+        }
+        minX = new int[occluders.length];
+        minY = new int[occluders.length];
+        maxX = new int[occluders.length];
+        maxY = new int[occluders.length];
+        for (int i = 0; i < occluders.length; i++) {
+            if (occluders[i].length != 4) {
+                throw new IllegalArgumentException(
+                        "An occluder needs x0, y0, x1 and y1");
+            }
+            minX[i] = Math.min(occluders[i][0], occluders[i][2]);
+            minY[i] = Math.min(occluders[i][1], occluders[i][3]);
+            maxX[i] = Math.max(occluders[i][0], occluders[i][2]);
+            maxY[i] = Math.max(occluders[i][1], occluders[i][3]);
+        }
+    }
+
+    // A width x length rectangle with the given occluders
+    public static RoomGeometry rectangle(int width, int length,
+            int[][] occluders) {
+        return new RoomGeometry(new int[][]{
+            {0, 0}, {width, 0}, {width, length}, {0, length}}, occluders);
+    }
+
+    // Read a geometry file (format: see above)
+    public static RoomGeometry load(Path file) throws IOException {
+        int[][] outline = null;
+        List<int[]> occluders = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file,
+                StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                String[] tokens = line.trim().split("\\s+");
+                if (tokens[0].isEmpty()) {
+                    continue;
+                }
+                int[][] points = parsePoints(tokens, lineNumber);
+                if (tokens[0].equals("outline") && outline == null) {
+                    outline = points;
+                } else if (tokens[0].equals("occluder")
+                        && points.length == 2) {
+                    occluders.add(new int[]{points[0][0], points[0][1],
+                        points[1][0], points[1][1]});
+                } else {
+                    throw new IllegalArgumentException("Line " + lineNumber
+                            + ": expected one outline or an occluder with "
+                            + "2 corners");
+                }
+            }
+        }
+        if (outline == null) {
+            throw new IllegalArgumentException(file + " has no outline");
+        }
+        return new RoomGeometry(outline, occluders.toArray(new int[0][]));
+    }
+
+    // The x,y points after the first token of a geometry file line
+    private static int[][] parsePoints(String[] tokens, int lineNumber) {
+        int[][] points = new int[tokens.length - 1][];
+        for (int i = 1; i < tokens.length; i++) {
+            String[] xy = tokens[i].split(",");
+            try {
+                if (xy.length != 2) {
+                    throw new NumberFormatException(tokens[i]);
+                }
+                points[i - 1] = new int[]{Integer.parseInt(xy[0]),
+                    Integer.parseInt(xy[1])};
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + lineNumber
+                        + ": expected x,y but found " + tokens[i], e);
+            }
+        }
+        return points;
+    }
+
+    // Throws if the outline does not fit in a width x length room
+    void checkBounds(int width, int length) {
+        for (int i = 0; i < outlineX.length; i++) {
+            if (outlineX[i] < 0 || outlineX[i] > width
+                    || outlineY[i] < 0 || outlineY[i] > length) {
+                throw new IllegalArgumentException("Outline corner "
+                        + outlineX[i] + "," + outlineY[i] + " is outside the "
+                        + width + "x" + length + " room");
+            }
+        }
+    }
+
+    /**
+     * contains
+     * @return Returns whether a point is in the room: inside the outline or
+     * on it, and not inside an occluder (its sides still count as the room).
+     */
+    public boolean contains(double x, double y) {
+        if (!isInsideOutline(x, y)) {
+            return false;
+        }
+        for (int i = 0; i < minX.length; i++) {
+            if (minX[i] < x && x < maxX[i] && minY[i] < y && y < maxY[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * isVisible
+     * @return Returns whether the straight line between two points stays in
+     * the room: both ends are in the room, it does not cross the outline and
+     * does not pass through an occluder. Lines along a wall or touching a
+     * corner are visible.
+     */
+    public boolean isVisible(double x0, double y0, double x1, double y1) {
+        return contains(x0, y0) && contains(x1, y1)
+                && isClearPath(x0, y0, x1, y1);
+    }
+
+    // isVisible for two points that are known to be in the room
+    boolean isClearPath(double x0, double y0, double x1, double y1) {
+        if (!isInsideOutline((x0 + x1) / 2, (y0 + y1) / 2)) {
+            return false;
+        }
+        int corners = outlineX.length;
+        for (int i = 0; i < corners; i++) {
+            int j = (i + 1) % corners;
+            if (crosses(x0, y0, x1, y1, outlineX[i], outlineY[i],
+                    outlineX[j], outlineY[j])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < minX.length; i++) {
+            if (passesThrough(x0, y0, x1, y1, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Point in polygon by ray casting, points on the outline are inside
+    private boolean isInsideOutline(double x, double y) {
+        boolean inside = false;
+        int corners = outlineX.length;
+        for (int i = 0, j = corners - 1; i < corners; j = i++) {
+            double xi = outlineX[i];
+            double yi = outlineY[i];
+            double xj = outlineX[j];
+            double yj = outlineY[j];
+            if (orientation(xj, yj, xi, yi, x, y) == 0
+                    && Math.min(xi, xj) <= x && x <= Math.max(xi, xj)
+                    && Math.min(yi, yj) <= y && y <= Math.max(yi, yj)) {
+                return true;
+            }
+            if ((yi > y) != (yj > y)
+                    && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    // Whether two segments cross at a point inside both of them (touching
+    // or overlapping does not count)
+    private static boolean crosses(double ax, double ay, double bx,
+            double by, double cx, double cy, double dx, double dy) {
+        double o1 = orientation(ax, ay, bx, by, cx, cy);
+        double o2 = orientation(ax, ay, bx, by, dx, dy);
+        double o3 = orientation(cx, cy, dx, dy, ax, ay);
+        double o4 = orientation(cx, cy, dx, dy, bx, by);
+        return o1 * o2 < 0 && o3 * o4 < 0;
+    }
+
+    // > 0 if c is left of a->b, < 0 if right, 0 if on the line
+    private static double orientation(double ax, double ay, double bx,
+            double by, double cx, double cy) {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+
+    // Whether a segment passes through the inside of occluder i (clipping
+    // the segment against the open rectangle, Liang-Barsky)
+    private boolean passesThrough(double x0, double y0, double x1,
+            double y1, int i) {
+        double enter = 0;
+        double exit = 1;
+        double[] start = {x0, y0};
+        double[] delta = {x1 - x0, y1 - y0};
+        double[] low = {minX[i], minY[i]};
+        double[] high = {maxX[i], maxY[i]};
+        for (int axis = 0; axis < 2; axis++) {
+            if (delta[axis] == 0) {
+                if (!(low[axis] < start[axis] && start[axis] < high[axis])) {
+                    return false;
+                }
+            } else {
+                double t0 = (low[axis] - start[axis]) / delta[axis];
+                double t1 = (high[axis] - start[axis]) / delta[axis];
+                enter = Math.max(enter, Math.min(t0, t1));
+                exit = Math.min(exit, Math.max(t0, t1));
+            }
+        }
+        return enter < exit;
+    }
+
+    // Write the outline and occluders (checkpoints)
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(outlineX.length);
+        for (int i = 0; i < outlineX.length; i++) {
+            out.writeInt(outlineX[i]);
+            out.writeInt(outlineY[i]);
+        }
+        out.writeInt(minX.length);
+        for (int i = 0; i < minX.length; i++) {
+            out.writeInt(minX[i]);
+            out.writeInt(minY[i]);
+            out.writeInt(maxX[i]);
+            out.writeInt(maxY[i]);
+        }
+    }
+
+    // Read what writeTo wrote
+    static RoomGeometry readFrom(DataInput in) throws IOException {
+        int[][] outline = new int[in.readInt()][];
+        for (int i = 0; i < outline.length; i++) {
+            outline[i] = new int[]{in.readInt(), in.readInt()};
+        }
+        int[][] occluders = new int[in.readInt()][];
+        for (int i = 0; i < occluders.length; i++) {
+            occluders[i] = new int[]{in.readInt(), in.readInt(),
+                in.readInt(), in.readInt()};
+        }
+        try {
+            return new RoomGeometry(outline, occluders);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid room geometry", e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ *  interface: SearchStrategy
+ * The algorithm that the LightPos_API generation loop runs: it creates the
+ * children of every generation from the parents and learns from the parents
+ * that were selected. Scoring the children (with the cache, screening and
+ * evaluation threads) stays in LightPos_API and is the same for every 
+ * strategy, and so is the (mu, lambda) selection of the best children 
+ * unless the strategy selects the parents itself (see selectParents).
+ */
+interface SearchStrategy {
+    /**
+     * startRun
+     * @param parents Scored parents a new run starts from (the random 
+     * initial ones, or the parents of the run that stagnated). Everything
+     * adapted during the previous run is reset.
+     */
+    void startRun(Population parents);
+
+    /**
+     * generateOffspring
+     * @param parents Current parents
+     * @param children Receives every child
+     * @param childParent Receives for every child the index of the parent it
+     * is most similar to (incremental evaluation starts from its sensor grid)
+     * @param random Random generator of the optimizer
+     */
+    void generateOffspring(Population parents, Population children,
+            int[] childParent, RandomSource random);
+
+    /**
+     * selectParents
+     * @param parents Current parents, receive the next ones
+     * @param children Scored children of the generation
+     * @return Returns true if the strategy replaced the parents itself, or
+     * false (the default) for the selection of the best children by fitness
+     */
+    default boolean selectParents(Population parents, Population children) {
+        return false;
+    }
+
+    // Free the populations the strategy keeps outside the heap (see
+    // Population.close) when it is replaced or the optimizer is closed
+    default void close() {
+    }
+
+    // Whether selectParents needs the exact fitness of children outside the
+    // parents.size() best ones too (then no evaluation can be cut short,
+    // see LightPos_API.setPruning)
+    default boolean usesEveryChildFitness() {
+        return false;
+    }
+
+    /**
+     * parentsSelected
+     * @param parents The selected parents (the best children of the 
+     * generation, best first, unless the strategy selected them itself)
+     */
+    void parentsSelected(Population parents);
+
+    // Current mutation strength of parameter i (0: x, 1: y, 2: intensity 
+    // option, 3: on/off), reported with the generation statistics
+    double getStepSize(int parameter);
+
+    // Adapted state for checkpoints (see LightPos_API.saveCheckpoint)
+    void writeState(DataOutput out) throws IOException;
+
+    void readState(DataInput in) throws IOException;
+
+    // Reflect a value at min and max until it lies within [min, max], in
+    // constant time however far outside it is
+    static double reflect(double value, double min, double max) {
+        double range = max - min;
+        if (!(range > 0)) {
+            return min;
+        }
+        double folded = (value - min) % (2 * range);
+        if (folded < 0) {
+            folded += 2 * range;
+        }
+        if (folded > range) {
+            folded = 2 * range - folded;
+        }
+        return min + folded;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ *  class: SelfAdaptiveStrategy
+ * The original evolution strategy of LightPos: discrete recombination picks
+ * one parent for every child, which is then changed by an uncorrelated 
+ * mutation with one self-adapted step size for each of the 4 light 
+ * parameters. Every individual carries its own 4 step sizes (stored in the
+ * Population), a child inherits them from the parent recombination picked
+ * and mutates them once before they are used for all of its lights.
+ * 
+ * Values that leave the parameter bounds are reflected back into them, so
+ * a mutation costs the same number of random draws however large the step
+ * sizes get.
+ * 
+ * Control parameters:
+ *      σ0                          (initial value of the mutation step size in 
+ *                                  each dimension)
+ *      τ’ = 1 / sqrt(2 * n)        (the overall learning rate)
+ *      τ = 1 / sqrt(2 * sqrt(n))   (the coordinate-specific learning rate)
+ *      ε0 = 0.01                   (the smallest step size, page 76)
+ */
+class SelfAdaptiveStrategy implements SearchStrategy {
+    private static final double MIN_STEP_SIZE = 0.01;
+    private final int nNumber; // number of lights
+    private final int pNumber = 4; // number of light parameters
+    private final double mutationInitialStepSize;
+    private final double overallLearningRate;
+    private final double coordinateLearningRate;
+    // Hard-coded parameter bounds (inclusive), see mutate
+    private final double[] minVal;
+    private final double[] maxVal;
+    // Mean step sizes of the parents (reported by getStepSize)
+    private final double[] meanStepSize;
+
+    public SelfAdaptiveStrategy(Population parents, Population children,
+            int nNumber, int roomWidth, int roomLength, int fixtureCount,
+            double mutationInitialStepSize) {
+        this.nNumber = nNumber;
+        this.mutationInitialStepSize = mutationInitialStepSize;
+        overallLearningRate= 1.0 / Math.sqrt(2. * nNumber * 4);
+        coordinateLearningRate = 1.0 / Math.sqrt(2 * Math.sqrt(nNumber));
+        // first: x position (inches)
+        // second: y position (inches)
+        // third: intesity option (a fixture of the catalogue)
+        // fourth: on/off
+        minVal = new double[]{0, 0, 0, 0};
+        maxVal = new double[]{roomWidth, roomLength, 
+            fixtureCount - 1, 1};
+        meanStepSize = new double[pNumber];
+        parents.enableStepSizes(pNumber);
+        children.enableStepSizes(pNumber);
+    }
+
+    // Reset the step sizes of every parent
+    @Override
+    public void startRun(Population parents) {
+        for (int p = 0; p < parents.size(); p++) {
+            for (int i = 0; i < pNumber; i++) {
+                parents.setStepSize(p, i, mutationInitialStepSize);
+            }
+        }
+        parentsSelected(parents);
+    }
+
+    /**
+     * generateOffspring
+     * Description: Apply global recombination to create all child parameter
+     * sets. Mutate each of the new child sets.
+     */
+    @Override
+    public void generateOffspring(Population parents, Population children,
+            int[] childParent, RandomSource random)
+    {
+        // Apply global recobmination to pick the parent of every child set
+        for (int i = 0; i < children.size(); i++) {
+            childParent[i] = recombine(random.nextInt(parents.size()), 
+                    random.nextInt(parents.size()), random);
+        }
+        
+        // Use uncorrelated mutations with n step sizes to modify each of the
+        // offspring produced via recombination (above).
+        for (int i = 0; i < children.size(); i++) {
+            mutate(parents, childParent[i], children, i, random);
+        }
+    }
+
+    // Average the step sizes of the new parents for reporting
+    @Override
+    public void parentsSelected(Population parents) {
+        for (int i = 0; i < pNumber; i++) {
+            double sum = 0;
+            for (int p = 0; p < parents.size(); p++) {
+                sum += parents.getStepSize(p, i);
+            }
+            meanStepSize[i] = sum / parents.size();
+        }
+    }
+
+    /**
+     * recombine
+     * @param x index of a parent solution
+     * @param y index of a parent solution
+     * @return Return either x or y (discrete recombination)
+     */
+    private int recombine(int x, int y, RandomSource random) {
+        if (random.nextBoolean())
+            return x;
+        else
+            return y;
+    }
+
+    /**
+     * mutate
+     * @param parent index of the parent solution the child is copied from
+     * @param child index of the child solution that receives the result
+     * Stores the modified solution and step sizes as the child. Uses method 
+     * from page 76. Uncorrelated mutation with n step sizes.
+     * 
+     * Only writes to the child, so children can be mutated independently.
+     * Values outside the hard-coded parameter bounds (see code) are 
+     * reflected back into them.
+     * 
+     * Because this method deals in primarily double values, when it stores 
+     * the light it converts (rounding) to integer and boolean values. This is
+     * an approximation that may need to be adjusted.
+     */
+    void mutate(Population parents, int parent, Population children, 
+            int child, RandomSource random)
+    {
+        // Mutate the inherited step sizes, one overall draw for the child
+        double overallNormal = overallLearningRate * random.nextGaussian();
+        for (int i = 0; i < pNumber; i++) {
+            double stepSize = parents.getStepSize(parent, i) * Math.exp(
+                    overallNormal 
+                    + (coordinateLearningRate * random.nextGaussian()));
+            // Keep it between ε0 and the width of the bounds
+            stepSize = Math.min(stepSize, maxVal[i] - minVal[i]);
+            children.setStepSize(child, i, Math.max(stepSize, MIN_STEP_SIZE));
+        }
+        double stepX = children.getStepSize(child, 0);
+        double stepY = children.getStepSize(child, 1);
+        double stepOp = children.getStepSize(child, 2);
+        double stepOn = children.getStepSize(child, 3);
+        
+        for (int a = 0; a < nNumber; a++) {
+            // Mutate the individual using the modified step sizes
+            double x = SearchStrategy.reflect(parents.getPos_x(parent, a) 
+                    + stepX * random.nextGaussian(), minVal[0], maxVal[0]);
+            double y = SearchStrategy.reflect(parents.getPos_y(parent, a) 
+                    + stepY * random.nextGaussian(), minVal[1], maxVal[1]);
+            double op = SearchStrategy.reflect(
+                    parents.getIntensityOp(parent, a) 
+                    + stepOp * random.nextGaussian(), minVal[2], maxVal[2]);
+            double on = SearchStrategy.reflect(
+                    (parents.isOn(parent, a) ? 1 : 0)
+                    + stepOn * random.nextGaussian(), minVal[3], maxVal[3]);
+
+            children.setLight(child, a,
+                    (int) Math.round(x),
+                    (int) Math.round(y),
+                    (int) Math.round(op),
+                    (Math.round(on) == 1.0));
+        }
+    }
+
+    @Override
+    public double getStepSize(int parameter) {
+        return meanStepSize[parameter];
+    }
+
+    // The step sizes themselves are stored with the parents
+    @Override
+    public void writeState(DataOutput out) throws IOException {
+        for (int i = 0; i < pNumber; i++) {
+            out.writeDouble(meanStepSize[i]);
+        }
+    }
+
+    @Override
+    public void readState(DataInput in) throws IOException {
+        for (int i = 0; i < pNumber; i++) {
+            meanStepSize[i] = in.readDouble();
+        }
+    }
+}
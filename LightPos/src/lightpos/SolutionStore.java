@@ -0,0 +1,399 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  class: SolutionStore
+ * The best layouts found for earlier rooms, kept in a file so later runs can
+ * start from them instead of from random lights (see
+ * LightPos_API.setWarmStart). Layouts are indexed by room: width, length,
+ * number of lights and a fingerprint of the model they were scored with
+ * (fixture catalogue and room geometry, see getModel). Every room keeps its
+ * solutionsPerRoom fittest distinct layouts.
+ *
+ * A room that is not in the store is seeded from the most similar rooms of
+ * the same model, by
+ *      |ln(width / w)| + |ln(length / l)| + |ln(lights / n)|
+ * with the light positions scaled to the new room. Layouts of another
+ * catalogue or geometry are never used: their fixture indices and fitness
+ * values mean something else. The file is rewritten
+ * (to a temporary file that is moved over it, like a checkpoint) whenever a
+ * layout is added. One store can be shared by optimizers that run at the
+ * same time in one process, but not by several processes.
+ */
+public final class SolutionStore {
+    private static final int MAGIC = 0x4C505353; // "LPSS"
+    private static final int VERSION = 2;
+    public static final int DEFAULT_SOLUTIONS_PER_ROOM = 8;
+
+    private final Path file;
+    private final int solutionsPerRoom;
+    // Layouts of every room (see StoredSolution.getRoomKey), fittest first
+    private final Map<String, List<StoredSolution>> rooms =
+            new LinkedHashMap<>();
+
+    private SolutionStore(Path file, int solutionsPerRoom) {
+        if (solutionsPerRoom < 1) {
+            throw new IllegalArgumentException(
+                    "A store keeps at least one solution per room");
+        }
+        this.file = file;
+        this.solutionsPerRoom = solutionsPerRoom;
+    }
+
+    // Open a store with DEFAULT_SOLUTIONS_PER_ROOM layouts per room
+    public static SolutionStore open(Path file) throws IOException {
+        return open(file, DEFAULT_SOLUTIONS_PER_ROOM);
+    }
+
+    /**
+     * open
+     * @param file Store file, created when the first layout is added
+     * @param solutionsPerRoom Layouts kept per room
+     * @return Returns the store with the layouts already in the file
+     */
+    public static SolutionStore open(Path file, int solutionsPerRoom)
+            throws IOException {
+        SolutionStore store = new SolutionStore(file, solutionsPerRoom);
+        if (Files.exists(file)) {
+            store.read();
+        }
+        return store;
+    }
+
+    // Number of layouts in the store
+    public synchronized int size() {
+        int size = 0;
+        for (List<StoredSolution> solutions : rooms.values()) {
+            size += solutions.size();
+        }
+        return size;
+    }
+
+    /**
+     * add
+     * @param width Room width (inches)
+     * @param length Room length (inches)
+     * @param catalogue Fixtures the layout was scored with
+     * @param geometry Room geometry the layout was scored with, or null for
+     * the empty width x length rectangle
+     * @param solution Layout found for the room (e.g. by getBestSolution)
+     * @param fitness Fitness of the layout
+     * @return Returns true if the layout is one of the solutionsPerRoom
+     * fittest of its room and the file was rewritten. An identical layout
+     * that is already stored only has its fitness raised.
+     */
+    public synchronized boolean add(int width, int length,
+            FixtureCatalogue catalogue, RoomGeometry geometry,
+            light[] solution, double fitness) throws IOException {
+        if (solution.length == 0 || !(fitness > -Double.MAX_VALUE)) {
+            return false;
+        }
+        StoredSolution added = new StoredSolution(width, length,
+                getModel(catalogue, geometry), fitness, solution);
+        List<StoredSolution> solutions = rooms.computeIfAbsent(
+                added.getRoomKey(), key -> new ArrayList<>());
+        for (int i = 0; i < solutions.size(); i++) {
+            if (solutions.get(i).hasSameLights(added)) {
+                if (solutions.get(i).fitness >= fitness) {
+                    return false;
+                }
+                solutions.remove(i);
+                break;
+            }
+        }
+        int index = 0;
+        while (index < solutions.size()
+                && solutions.get(index).fitness >= fitness) {
+            index++;
+        }
+        if (index >= solutionsPerRoom) {
+            return false;
+        }
+        solutions.add(index, added);
+        if (solutions.size() > solutionsPerRoom) {
+            solutions.remove(solutions.size() - 1);
+        }
+        CheckpointWriter.write(file, toBytes());
+        return true;
+    }
+
+    /**
+     * getNearest
+     * @param width Room width (inches)
+     * @param length Room length (inches)
+     * @param catalogue Fixtures of the room
+     * @param geometry Geometry of the room, or null for the rectangle
+     * @param lights Number of lights
+     * @param count Maximum number of layouts
+     * @return Returns up to count layouts of the rooms of the same model
+     * most similar to the given one (the room itself first if it is
+     * stored), fittest first within a room.
+     */
+    synchronized List<StoredSolution> getNearest(int width, int length,
+            FixtureCatalogue catalogue, RoomGeometry geometry, int lights,
+            int count) {
+        long model = getModel(catalogue, geometry);
+        List<List<StoredSolution>> byDistance = new ArrayList<>();
+        for (List<StoredSolution> solutions : rooms.values()) {
+            if (solutions.get(0).model == model) {
+                byDistance.add(solutions);
+            }
+        }
+        Collections.sort(byDistance, Comparator.comparingDouble(
+                solutions -> solutions.get(0).getDistance(width, length,
+                        lights)));
+        List<StoredSolution> nearest = new ArrayList<>();
+        for (List<StoredSolution> solutions : byDistance) {
+            for (StoredSolution solution : solutions) {
+                if (nearest.size() >= count) {
+                    return nearest;
+                }
+                nearest.add(solution);
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * getModel
+     * @return Returns the fingerprint of everything besides the room size
+     * that the fitness of a layout depends on: the first 64 bits of the
+     * SHA-256 of the catalogue and geometry as checkpoints write them.
+     */
+    static long getModel(FixtureCatalogue catalogue, RoomGeometry geometry) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            catalogue.writeTo(out);
+            out.writeBoolean(geometry != null);
+            if (geometry != null) {
+                geometry.writeTo(out);
+            }
+            out.flush();
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+                    bytes.toByteArray());
+            long model = 0;
+            for (int i = 0; i < 8; i++) {
+                model = (model << 8) | (digest[i] & 0xFF);
+            }
+            return model;
+        } catch (IOException | NoSuchAlgorithmException e) {
+            // Not possible: in-memory streams, every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Serialize every layout (format: see read)
+    private byte[] toBytes() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size());
+            for (List<StoredSolution> solutions : rooms.values()) {
+                for (StoredSolution solution : solutions) {
+                    solution.writeTo(out);
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Not possible with in-memory streams
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Read the layouts of the file, keeping the limit per room
+    private void read() throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a LightPos store");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported store version "
+                        + version);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                StoredSolution solution = StoredSolution.readFrom(in);
+                List<StoredSolution> solutions = rooms.computeIfAbsent(
+                        solution.getRoomKey(), key -> new ArrayList<>());
+                if (solutions.size() < solutionsPerRoom) {
+                    solutions.add(solution);
+                }
+            }
+        }
+        for (List<StoredSolution> solutions : rooms.values()) {
+            solutions.sort(Comparator.comparingDouble(
+                    (StoredSolution s) -> s.fitness).reversed());
+        }
+    }
+
+    /**
+     *  class: StoredSolution
+     * One stored layout with the room it was found for.
+     */
+    static final class StoredSolution {
+        final int width;
+        final int length;
+        final long model; // see getModel
+        final double fitness;
+        final int[] pos_x;
+        final int[] pos_y;
+        final int[] intensityOp;
+        final boolean[] power;
+
+        StoredSolution(int width, int length, long model, double fitness,
+                light[] solution) {
+            this(width, length, model, fitness, solution.length);
+            for (int k = 0; k < solution.length; k++) {
+                pos_x[k] = solution[k].getPos_x();
+                pos_y[k] = solution[k].getPos_y();
+                intensityOp[k] = solution[k].getIntensityOp();
+                power[k] = solution[k].isOn();
+            }
+        }
+
+        private StoredSolution(int width, int length, long model,
+                double fitness, int lights) {
+            this.width = width;
+            this.length = length;
+            this.model = model;
+            this.fitness = fitness;
+            pos_x = new int[lights];
+            pos_y = new int[lights];
+            intensityOp = new int[lights];
+            power = new boolean[lights];
+        }
+
+        String getRoomKey() {
+            return Long.toHexString(model) + ":" + width + "x" + length
+                    + "x" + pos_x.length;
+        }
+
+        // How different the room of this layout is from the given one
+        double getDistance(int width, int length, int lights) {
+            return Math.abs(Math.log((double) Math.max(1, width)
+                    / Math.max(1, this.width)))
+                    + Math.abs(Math.log((double) Math.max(1, length)
+                    / Math.max(1, this.length)))
+                    + Math.abs(Math.log((double) Math.max(1, lights)
+                    / Math.max(1, pos_x.length)));
+        }
+
+        boolean hasSameLights(StoredSolution other) {
+            return Arrays.equals(pos_x, other.pos_x)
+                    && Arrays.equals(pos_y, other.pos_y)
+                    && Arrays.equals(intensityOp, other.intensityOp)
+                    && Arrays.equals(power, other.power);
+        }
+
+        /**
+         * copyTo
+         * Description: Sets the lights of one individual to this layout,
+         * scaled to a width x length room. Lights that are on are taken
+         * first, so with fewer lights than stored the ones that are off are
+         * dropped; with more lights the extra ones are random and off.
+         * Fixtures beyond the catalogue become its last fixture.
+         * @param jitter Deviation (inches) of a random shift of every light
+         * position, 0 for the scaled layout itself
+         */
+        void copyTo(Population solutions, int individual, int width,
+                int length, int fixtures, double jitter, RandomSource random) {
+            int[] order = new int[pos_x.length];
+            int ordered = 0;
+            for (int k = 0; k < pos_x.length; k++) {
+                if (power[k]) {
+                    order[ordered++] = k;
+                }
+            }
+            for (int k = 0; k < pos_x.length; k++) {
+                if (!power[k]) {
+                    order[ordered++] = k;
+                }
+            }
+            double scaleX = this.width > 0 ? (double) width / this.width : 0;
+            double scaleY = this.length > 0
+                    ? (double) length / this.length : 0;
+            for (int i = 0; i < solutions.nNumber; i++) {
+                if (i >= order.length) {
+                    solutions.setLight(individual, i,
+                            random.nextInt(width + 1),
+                            random.nextInt(length + 1),
+                            random.nextInt(fixtures), false);
+                    continue;
+                }
+                int k = order[i];
+                double x = pos_x[k] * scaleX;
+                double y = pos_y[k] * scaleY;
+                if (jitter > 0) {
+                    x += jitter * random.nextGaussian();
+                    y += jitter * random.nextGaussian();
+                }
+                solutions.setLight(individual, i,
+                        (int) Math.round(Math.min(Math.max(x, 0), width)),
+                        (int) Math.round(Math.min(Math.max(y, 0), length)),
+                        Math.min(intensityOp[k], fixtures - 1), power[k]);
+            }
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(width);
+            out.writeInt(length);
+            out.writeLong(model);
+            out.writeDouble(fitness);
+            out.writeInt(pos_x.length);
+            for (int k = 0; k < pos_x.length; k++) {
+                out.writeInt(pos_x[k]);
+                out.writeInt(pos_y[k]);
+                out.writeByte(intensityOp[k]);
+                out.writeBoolean(power[k]);
+            }
+        }
+
+        static StoredSolution readFrom(DataInputStream in)
+                throws IOException {
+            int width = in.readInt();
+            int length = in.readInt();
+            long model = in.readLong();
+            double fitness = in.readDouble();
+            int lights = in.readInt();
+            if (width < 0 || length < 0 || lights <= 0) {
+                throw new IOException("Invalid stored solution");
+            }
+            StoredSolution solution = new StoredSolution(width, length,
+                    model, fitness, lights);
+            for (int k = 0; k < lights; k++) {
+                solution.pos_x[k] = in.readInt();
+                solution.pos_y[k] = in.readInt();
+                solution.intensityOp[k] = in.readUnsignedByte();
+                solution.power[k] = in.readBoolean();
+            }
+            return solution;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  class: SplitRandom
+ * The random generator of the optimizer: SplitMix64 (Steele, Lea and Flood,
+ * 2014, the algorithm of java.util.SplittableRandom) with a ziggurat
+ * Gaussian sampler (Marsaglia and Tsang, 2000, in the form of Doornik,
+ * 2005). Unlike java.util.Random it keeps its state in plain fields (one
+ * generator per thread, no atomic updates) and nextGaussian costs one
+ * 64-bit draw and a table lookup almost every time.
+ *
+ * The default RandomSource. split returns an independent generator for
+ * another thread (every island of an IslandModel has its own), and the
+ * whole state is two longs, so runs repeat exactly from a seed or a
+ * checkpoint.
+ */
+final class SplitRandom implements RandomSource {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    // Seeds generators created without one (like new Random())
+    private static final AtomicLong defaultSeed =
+            new AtomicLong(mix64(System.nanoTime()));
+
+    // Ziggurat of 128 layers of equal area: layer i covers |x| up to
+    // ZIGGURAT_X[i], ZIGGURAT_RATIO[i] = ZIGGURAT_X[i + 1] / ZIGGURAT_X[i]
+    // is the part of it that lies completely below the density. Layer 0 is
+    // the base, it includes the tail beyond ZIGGURAT_R.
+    private static final int ZIGGURAT_LAYERS = 128;
+    private static final double ZIGGURAT_R = 3.442619855899;
+    private static final double ZIGGURAT_AREA = 9.91256303526217e-3;
+    private static final double[] ZIGGURAT_X =
+            new double[ZIGGURAT_LAYERS + 1];
+    private static final double[] ZIGGURAT_RATIO =
+            new double[ZIGGURAT_LAYERS];
+
+    static {
+        double f = Math.exp(-0.5 * ZIGGURAT_R * ZIGGURAT_R);
+        ZIGGURAT_X[0] = ZIGGURAT_AREA / f;
+        ZIGGURAT_X[1] = ZIGGURAT_R;
+        ZIGGURAT_X[ZIGGURAT_LAYERS] = 0;
+        for (int i = 2; i < ZIGGURAT_LAYERS; i++) {
+            ZIGGURAT_X[i] = Math.sqrt(-2 * Math.log(
+                    ZIGGURAT_AREA / ZIGGURAT_X[i - 1] + f));
+            f = Math.exp(-0.5 * ZIGGURAT_X[i] * ZIGGURAT_X[i]);
+        }
+        for (int i = 0; i < ZIGGURAT_LAYERS; i++) {
+            ZIGGURAT_RATIO[i] = ZIGGURAT_X[i + 1] / ZIGGURAT_X[i];
+        }
+    }
+
+    private long seed;
+    private long gamma; // odd increment of the seed
+
+    // A generator with an unpredictable seed
+    public SplitRandom() {
+        this(mix64(defaultSeed.getAndAdd(2 * GOLDEN_GAMMA))
+                ^ mix64(System.nanoTime()));
+    }
+
+    // The same seed gives the same numbers (see RandomSource.create)
+    public SplitRandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private SplitRandom(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    @Override
+    public SplitRandom split() {
+        return new SplitRandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+    @Override
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        int r = (int) (nextLong() >>> 33);
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            // power of two: the high bits
+            return (int) ((bound * (long) r) >> 31);
+        }
+        // Reject the last incomplete multiple of bound so every value is
+        // equally likely
+        for (int u = r; u - (r = u % bound) + m < 0;
+                u = (int) (nextLong() >>> 33)) {
+        }
+        return r;
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+
+    /**
+     * nextGaussian
+     * @return Returns a standard normal number (mean 0, deviation 1). The
+     * top 53 bits of one draw place the number in a layer picked by the low
+     * 7 bits; it is accepted at once when it falls in the rectangle under
+     * the density (about 99% of the draws), else it is tested against the
+     * wedge of the layer or sampled from the tail.
+     */
+    @Override
+    public double nextGaussian() {
+        while (true) {
+            long bits = nextLong();
+            int layer = (int) bits & (ZIGGURAT_LAYERS - 1);
+            double u = 2 * ((bits >>> 11) * DOUBLE_UNIT) - 1;
+            if (Math.abs(u) < ZIGGURAT_RATIO[layer]) {
+                return u * ZIGGURAT_X[layer];
+            }
+            if (layer == 0) {
+                return nextGaussianTail(u < 0);
+            }
+            double x = u * ZIGGURAT_X[layer];
+            double f0 = Math.exp(-0.5 * (ZIGGURAT_X[layer] * ZIGGURAT_X[layer]
+                    - x * x));
+            double f1 = Math.exp(-0.5 * (ZIGGURAT_X[layer + 1]
+                    * ZIGGURAT_X[layer + 1] - x * x));
+            if (f1 + nextDouble() * (f0 - f1) < 1) {
+                return x;
+            }
+        }
+    }
+
+    // Normal number beyond ZIGGURAT_R (Marsaglia, 1964)
+    private double nextGaussianTail(boolean negative) {
+        double x;
+        double y;
+        do {
+            x = Math.log(1 - nextDouble()) / ZIGGURAT_R;
+            y = Math.log(1 - nextDouble());
+        } while (-2 * y < x * x);
+        return negative ? x - ZIGGURAT_R : ZIGGURAT_R - x;
+    }
+
+    // Write the state (checkpoints)
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(seed);
+        out.writeLong(gamma);
+    }
+
+    // Read what writeTo wrote
+    static SplitRandom readFrom(DataInput in) throws IOException {
+        long seed = in.readLong();
+        long gamma = in.readLong();
+        if ((gamma & 1) == 0) {
+            throw new IOException("Invalid random generator state");
+        }
+        return new SplitRandom(seed, gamma);
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    // Finalizer of MurmurHash3 with the constants of SplitMix64 (variant 13)
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // An odd gamma with enough bit transitions (as in SplittableRandom)
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
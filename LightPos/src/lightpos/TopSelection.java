@@ -0,0 +1,141 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+/**
+ *  class: TopSelection
+ * Finds the indices of the best values of an array without sorting all of
+ * them: a quickselect moves the best values to the front, then only those
+ * are sorted. Works on parallel double/int buffers that are reused for every
+ * call, so a selection does not allocate.
+ *
+ * Values are ordered like Double.compare (highest first). Equal values are
+ * ordered by index, highest index first, which gives the same order as a
+ * stable ascending sort read from the end.
+ */
+class TopSelection {
+    private final double[] values;
+    private final int[] indices;
+
+    // Ranges this small are sorted by insertion instead of partitioning
+    private static final int INSERTION_SORT_SIZE = 16;
+
+    public TopSelection(int capacity) {
+        this.values = new double[capacity];
+        this.indices = new int[capacity];
+    }
+
+    /**
+     * selectBest
+     * @param fitness Fitness of every candidate, NaN values are replaced by
+     * -Double.MAX_VALUE (in this array as well)
+     * @param n Number of candidates
+     * @param count Number of candidates to select
+     * @return Returns a buffer whose first count entries are the indices of
+     * the best candidates, best first. The buffer is reused by the next call.
+     */
+    public int[] selectBest(double[] fitness, int n, int count) {
+        for (int i = 0; i < n; i++) {
+            if (Double.isNaN(fitness[i])) {
+                // If, for whatever reason, an invalid value is found
+                fitness[i] = -Double.MAX_VALUE;
+            }
+            values[i] = fitness[i];
+            indices[i] = i;
+        }
+        count = Math.min(count, n);
+        if (count <= 0) {
+            return indices;
+        }
+
+        // Quickselect: afterwards positions [0, count) hold the best values
+        int k = count - 1;
+        int lo = 0;
+        int hi = n - 1;
+        while (hi - lo >= INSERTION_SORT_SIZE) {
+            int p = partition(lo, hi);
+            if (p == k) {
+                break;
+            } else if (p < k) {
+                lo = p + 1;
+            } else {
+                hi = p - 1;
+            }
+        }
+        if (hi - lo < INSERTION_SORT_SIZE) {
+            insertionSort(lo, hi);
+        }
+
+        // Only the selected values need to be in order
+        sort(0, k);
+        return indices;
+    }
+
+    // Quicksort of positions [lo, hi], best first
+    private void sort(int lo, int hi) {
+        while (hi - lo >= INSERTION_SORT_SIZE) {
+            int p = partition(lo, hi);
+            // Recurse into the smaller side to keep the stack shallow
+            if (p - lo < hi - p) {
+                sort(lo, p - 1);
+                lo = p + 1;
+            } else {
+                sort(p + 1, hi);
+                hi = p - 1;
+            }
+        }
+        insertionSort(lo, hi);
+    }
+
+    // Moves the values better than the pivot (median of three) to the left
+    // of it and returns the pivot's final position
+    private int partition(int lo, int hi) {
+        int mid = (lo + hi) >>> 1;
+        if (isBetter(mid, lo)) {
+            swap(mid, lo);
+        }
+        if (isBetter(hi, lo)) {
+            swap(hi, lo);
+        }
+        if (isBetter(hi, mid)) {
+            swap(hi, mid);
+        }
+        // lo >= mid >= hi, use mid as the pivot and park it at hi
+        swap(mid, hi);
+        int store = lo;
+        for (int j = lo; j < hi; j++) {
+            if (isBetter(j, hi)) {
+                swap(store, j);
+                store++;
+            }
+        }
+        swap(store, hi);
+        return store;
+    }
+
+    private void insertionSort(int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && isBetter(j, j - 1); j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    // Whether the value at position a comes before the value at position b
+    private boolean isBetter(int a, int b) {
+        int compare = Double.compare(values[a], values[b]);
+        return compare > 0 || (compare == 0 && indices[a] > indices[b]);
+    }
+
+    private void swap(int a, int b) {
+        double value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+        int index = indices[a];
+        indices[a] = indices[b];
+        indices[b] = index;
+    }
+}
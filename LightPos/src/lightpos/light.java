@@ -19,73 +19,23 @@ class light {
     boolean power;
     
     public light() {
-        this.pos_x = 0;
-        this.pos_y = 0;
-        this.intensityOp = 1;
-        this.power = true;
-        switch(this.intensityOp)
-        {
-            case 0:
-                this.watts = 40;
-                this.intensity = 167.9544249;
-                break;
-            case 1:
-                this.watts = 60;
-                this.intensity = 298.5856442;
-                break;
-            case 2:
-                this.watts = 75;
-                this.intensity = 410.5552608;
-                break;
-            case 3:
-                this.watts = 100;
-                this.intensity = 597.1712885;
-                break;
-            case 4:
-                this.watts = 150;
-                this.intensity = 970.4033438;
-                break;
-            default:
-                // Represents an incorrect value
-                this.watts = 0;
-                this.intensity = 0;
-                break;
-        }
+        this(0, 0, 1, true);
     }
     
+    // A light with a fixture of the default catalogue
     public light(int pos_x, int pos_y, int intensityOp, boolean power) {
+        this(pos_x, pos_y, intensityOp, power, FixtureCatalogue.DEFAULT);
+    }
+    
+    // A light with fixture intensityOp of the given catalogue
+    public light(int pos_x, int pos_y, int intensityOp, boolean power,
+            FixtureCatalogue catalogue) {
         this.pos_x = pos_x;
         this.pos_y = pos_y;
         this.intensityOp = intensityOp;
         this.power = power;
-        switch(this.intensityOp)
-        {
-            case 0:
-                this.watts = 40;
-                this.intensity = 167.9544249;
-                break;
-            case 1:
-                this.watts = 60;
-                this.intensity = 298.5856442;
-                break;
-            case 2:
-                this.watts = 75;
-                this.intensity = 410.5552608;
-                break;
-            case 3:
-                this.watts = 100;
-                this.intensity = 597.1712885;
-                break;
-            case 4:
-                this.watts = 150;
-                this.intensity = 970.4033438;
-                break;
-            default:
-                // Represents an incorrect value
-                this.watts = 0;
-                this.intensity = 0;
-                break;
-        }
+        this.watts = catalogue.getWatts(this.intensityOp);
+        this.intensity = catalogue.getIntensity(this.intensityOp);
     }
     
     //enum for initialization
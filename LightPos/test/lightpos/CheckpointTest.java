@@ -0,0 +1,89 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *  class: CheckpointTest
+ * A seeded run resumed from a checkpoint ends exactly like the run that was
+ * never interrupted: same fitness, same layout.
+ */
+public class CheckpointTest {
+    private static final int GENERATIONS = 120;
+    private static final int INTERRUPTED_AT = 47;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static LightPos_API create(LightPos_API.Strategy strategy) {
+        LightPos_API api = new LightPos_API(10, 100, 14, 96, 96, 2,
+                GENERATIONS, 1);
+        api.setSeed(7);
+        api.setStrategy(strategy);
+        return api;
+    }
+
+    // x, y, fixture and power of every light
+    private static int[] getLayout(light[] solution) {
+        int[] layout = new int[solution.length * 4];
+        for (int k = 0; k < solution.length; k++) {
+            layout[4 * k] = solution[k].getPos_x();
+            layout[4 * k + 1] = solution[k].getPos_y();
+            layout[4 * k + 2] = solution[k].getIntensityOp();
+            layout[4 * k + 3] = solution[k].isOn() ? 1 : 0;
+        }
+        return layout;
+    }
+
+    private void assertExactResume(LightPos_API.Strategy strategy)
+            throws IOException {
+        light[] expected;
+        double expectedFitness;
+        try (LightPos_API api = create(strategy)) {
+            expected = api.getBestSolution();
+            expectedFitness = api.getBestFitness();
+        }
+
+        Path checkpoint = folder.newFile().toPath();
+        try (LightPos_API api = create(strategy)) {
+            api.startRun();
+            for (int g = 0; g < INTERRUPTED_AT; g++) {
+                api.runGeneration();
+            }
+            api.saveCheckpoint(checkpoint);
+        }
+        try (LightPos_API api = LightPos_API.loadCheckpoint(checkpoint, 1)) {
+            light[] resumed = api.resumeBestSolution();
+            assertEquals(strategy.toString(), expectedFitness,
+                    api.getBestFitness(), 0);
+            assertArrayEquals(strategy.toString(), getLayout(expected),
+                    getLayout(resumed));
+        }
+    }
+
+    @Test
+    public void selfAdaptiveEsResumesExactly() throws IOException {
+        assertExactResume(LightPos_API.Strategy.SELF_ADAPTIVE_ES);
+    }
+
+    @Test
+    public void cmaEsResumesExactly() throws IOException {
+        assertExactResume(LightPos_API.Strategy.CMA_ES);
+    }
+
+    @Test
+    public void nsga2ResumesExactly() throws IOException {
+        assertExactResume(LightPos_API.Strategy.NSGA_II);
+    }
+}
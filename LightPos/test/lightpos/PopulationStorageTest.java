@@ -0,0 +1,68 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ *  class: PopulationStorageTest
+ * Where the lights are kept (see LightPos_API.setPopulationStorage) does not
+ * change a seeded run: heap, direct and mapped storage give the same
+ * fitness and layout with every strategy.
+ */
+public class PopulationStorageTest {
+    private static final int GENERATIONS = 60;
+
+    // Best fitness of a seeded run, and its layout in layout
+    private static double run(LightPos_API.Strategy strategy,
+            LightPos_API.Storage storage, int[] layout) {
+        try (LightPos_API api = new LightPos_API(10, 100, 14, 96, 96, 2,
+                GENERATIONS, 1, FixtureCatalogue.DEFAULT, storage)) {
+            api.setSeed(5);
+            api.setStrategy(strategy);
+            light[] best = api.getBestSolution();
+            for (int k = 0; k < best.length; k++) {
+                layout[4 * k] = best[k].getPos_x();
+                layout[4 * k + 1] = best[k].getPos_y();
+                layout[4 * k + 2] = best[k].getIntensityOp();
+                layout[4 * k + 3] = best[k].isOn() ? 1 : 0;
+            }
+            return api.getBestFitness();
+        }
+    }
+
+    private static void assertSameRuns(LightPos_API.Strategy strategy) {
+        int[] expectedLayout = new int[14 * 4];
+        double expected = run(strategy, LightPos_API.Storage.HEAP,
+                expectedLayout);
+        for (LightPos_API.Storage storage : new LightPos_API.Storage[]{
+            LightPos_API.Storage.DIRECT, LightPos_API.Storage.MAPPED}) {
+            int[] layout = new int[14 * 4];
+            assertEquals(strategy + " " + storage, expected,
+                    run(strategy, storage, layout), 0);
+            assertArrayEquals(strategy + " " + storage, expectedLayout,
+                    layout);
+        }
+    }
+
+    @Test
+    public void selfAdaptiveEsIsTheSameOnEveryStorage() {
+        assertSameRuns(LightPos_API.Strategy.SELF_ADAPTIVE_ES);
+    }
+
+    @Test
+    public void cmaEsIsTheSameOnEveryStorage() {
+        assertSameRuns(LightPos_API.Strategy.CMA_ES);
+    }
+
+    @Test
+    public void nsga2IsTheSameOnEveryStorage() {
+        assertSameRuns(LightPos_API.Strategy.NSGA_II);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ *  class: PruningTest
+ * Upper-bound pruning only gives up children that can not be selected, so
+ * a seeded run selects exactly the same parents with and without it, on one
+ * thread or several (every thread prunes against its own threshold).
+ */
+public class PruningTest {
+    private static final int GENERATIONS = 60;
+
+    // Best fitness and layout of a seeded run
+    private static String run(LightPos_API.Strategy strategy, int threads,
+            boolean pruning) {
+        try (LightPos_API api = new LightPos_API(10, 100, 14, 96, 96, 2,
+                GENERATIONS, threads)) {
+            api.setSeed(11);
+            api.setStrategy(strategy);
+            api.setPruning(pruning);
+            light[] best = api.getBestSolution();
+            if (pruning) {
+                assertTrue("nothing was pruned",
+                        api.getPrunedEvaluations() > 0);
+            }
+            StringBuilder result = new StringBuilder();
+            result.append(api.getBestFitness());
+            for (light l : best) {
+                result.append(' ').append(l.getPos_x()).append(',')
+                        .append(l.getPos_y()).append(',')
+                        .append(l.getIntensityOp()).append(',')
+                        .append(l.isOn());
+            }
+            return result.toString();
+        }
+    }
+
+    private static void assertSameRun(LightPos_API.Strategy strategy,
+            int threads) {
+        assertEquals(strategy + " on " + threads + " threads",
+                run(strategy, threads, false), run(strategy, threads, true));
+    }
+
+    @Test
+    public void selfAdaptiveEsIsUnchanged() {
+        assertSameRun(LightPos_API.Strategy.SELF_ADAPTIVE_ES, 1);
+    }
+
+    @Test
+    public void selfAdaptiveEsIsUnchangedOnFourThreads() {
+        assertSameRun(LightPos_API.Strategy.SELF_ADAPTIVE_ES, 4);
+    }
+
+    @Test
+    public void cmaEsIsUnchanged() {
+        assertSameRun(LightPos_API.Strategy.CMA_ES, 1);
+    }
+
+    @Test
+    public void cmaEsIsUnchangedOnFourThreads() {
+        assertSameRun(LightPos_API.Strategy.CMA_ES, 4);
+    }
+}
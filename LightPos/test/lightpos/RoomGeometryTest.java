@@ -0,0 +1,60 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package lightpos;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *  class: RoomGeometryTest
+ * Lights in an L-shaped room. The room is large enough for the visibility
+ * bits to be shared by cells of 2 x 2 positions, so lights on the inner
+ * walls of the L are in cells whose centre is outside the room.
+ */
+public class RoomGeometryTest {
+    private static final int SIZE = 960;
+    private static LightPos_API api;
+
+    @BeforeClass
+    public static void createRoom() {
+        api = new LightPos_API(1, 1, 1, SIZE, SIZE, 1, 1, 1);
+        // L-shaped: the quarter beyond (SIZE / 2, SIZE / 2) is cut away
+        api.setRoomGeometry(new RoomGeometry(new int[][]{
+            {0, 0}, {SIZE, 0}, {SIZE, SIZE / 2}, {SIZE / 2, SIZE / 2},
+            {SIZE / 2, SIZE}, {0, SIZE}}, new int[0][]));
+    }
+
+    // Total intensity of all sensors lit by one light at x, y
+    private static double getLitIntensity(int x, int y) {
+        Population single = new Population(1, 1);
+        single.setLight(0, 0, x, y, 2, true);
+        double[] grid = new double[(SIZE / 12) * (SIZE / 12)];
+        api.getLightGrid(single, 0, grid, 0);
+        double sum = 0;
+        for (double value : grid) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    @Test
+    public void lightOnInnerWallLightsTheRoom() {
+        // On the wall between the arm and the cut-away quarter
+        double onWall = getLitIntensity(SIZE / 2, 700);
+        double inside = getLitIntensity(SIZE / 2 - 2, 700);
+        assertTrue("light on the wall is dark", onWall > 0.5 * inside);
+        onWall = getLitIntensity(700, SIZE / 2);
+        inside = getLitIntensity(700, SIZE / 2 - 2);
+        assertTrue("light on the wall is dark", onWall > 0.5 * inside);
+    }
+
+    @Test
+    public void lightOutsideTheRoomLightsNothing() {
+        assertTrue(getLitIntensity(700, 700) == 0);
+    }
+}